@@ -59,27 +59,20 @@ public class AnimatedModel extends Model
       // Store a new trail at this location.
       trails.add(new ModelTrail(this));
 
-      for (int j = 0; j < trails.size(); j++)
-      {
-        // Decay the lifespan of each trail.
-        ModelTrail mt = trails.get(j);
+      // Decay the lifespan of each trail.
+      for (ModelTrail mt : trails)
         mt.tick();
 
-        // Remove invisible trails.
-        if (mt.hidden())
-        {
-          trails.remove(mt);
-          j--;
-        }
-      }
+      // Remove invisible trails.
+      trails.removeIf(ModelTrail::hidden);
     }
   }
 
-  // Adds the model and all corresponding trails to the pipeline.
-  public void addTo(ArrayList<Triangle> pipeline, boolean shadows)
+  // Adds the model and all corresponding trails to the scene.
+  public void addTo(Scene scene)
   {
-    super.addTo(pipeline, shadows);
+    super.addTo(scene);
     for (ModelTrail mt : trails)
-      mt.addTo(pipeline, shadows);
+      mt.addTo(scene);
   }
 }
@@ -19,6 +19,8 @@ public class Arguments
           "Controls for Zoom: O/P" + "\n" +
           "Controls for Rotation: FGHJKL" + "\n" +
           "E = Toggle Heads-Up Display" + "\n" +
+          "T = Toggle Stage Timers" + "\n" +
+          "C = Write Stage Timers to CSV" + "\n" +
           "Left Click = Reset All" + "\n" +
           "Right Click = Toggle Shadows" + "\n" +
           "Left Control = Toggle Pause";
@@ -55,7 +55,7 @@ public class AxialStar extends AnimatedModel
     };
 
     for (int i = 0; i < 24; i++)
-      tris.add(new Triangle(coords[i], colorsAxial[i % 6]));
+      tris.add(new Triangle(coords[i], colorsAxial[i % 6].getRGB()));
   }
 
   public void tick() {
@@ -134,7 +134,35 @@ public class Basis
    */
   public Vec3 G_L(Vec3 o)
   {
-    return o.sub(origin).itimes(inv);
+    return G_L(o, new Vec3());
+  }
+
+  /**
+   * Stores G_L(o) in out and returns out. out may be the same Vec3 as o.
+   */
+  public Vec3 G_L(Vec3 o, Vec3 out)
+  {
+    return o.subInto(origin, out).itimesInto(inv, out);
+  }
+
+  /**
+   * Returns the 4x4 homogeneous matrix of G_L, which maps (o, 1) to
+   * (G_L(o), 1).
+   */
+  public Matrix homogeneousG_L()
+  {
+    Vec3 t = origin.itimes(inv);
+    Matrix r = new Matrix(4);
+
+    for (int i = 0; i < 3; i++)
+      for (int j = 0; j < 3; j++)
+        r.v[i][j] = inv.v[i][j];
+
+    r.v[0][3] = -t.x;
+    r.v[1][3] = -t.y;
+    r.v[2][3] = -t.z;
+
+    return r;
   }
 
   public String toString()
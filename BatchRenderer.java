@@ -0,0 +1,290 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+
+/**
+ * Renders one Scene from many cameras at once, such as the views of a camera
+ * sweep or a turntable, with every frame on a single worker thread.
+ *
+ * Rendering many small frames concurrently keeps every core busy without the
+ * cost of splitting each frame into tiles, so every worker rasterizes its
+ * frames alone on an OffscreenRenderer of its own, with its own reusable
+ * buffers. The workers share the Scene, whose world-space meshes are only
+ * read.
+ *
+ * Workers take the cameras in order, and a worker that finishes a frame waits
+ * for the frames before it to reach the FrameSink first, so the sink receives
+ * the frames one at a time and in order while the next ones are rendered.
+ *
+ * @author Justin C
+ */
+public class BatchRenderer
+{
+  /**
+   * The number of worker threads.
+   */
+  public final int threads;
+
+  /**
+   * The number of frames rendered, the number of workers that rendered them,
+   * and the nanoseconds taken by the last batch.
+   */
+  private int frames, workers;
+  private long elapsed;
+
+  /**
+   * The index of the next frame for the sink, and the lock that guards it.
+   */
+  private int delivered;
+  private final Object lock = new Object();
+
+  /**
+   * The first RuntimeException or Error thrown by a worker of the current
+   * batch, or null.
+   */
+  private Throwable failure;
+
+  /**
+   * Constructs a BatchRenderer with the specified number of worker threads.
+   */
+  public BatchRenderer(int count)
+  {
+    if (count < 1)
+      throw new IllegalArgumentException(
+          "A BatchRenderer requires at least one thread!");
+
+    threads = count;
+  }
+
+  /**
+   * Constructs a BatchRenderer with the default number of rendering threads.
+   */
+  public BatchRenderer()
+  {
+    this(Triangle.THREADS);
+  }
+
+  /**
+   * Renders scene as seen by every camera of cams, each at the resolution of
+   * its camera, and passes the frames to sink in order. Returns once every
+   * frame has reached sink. Any exception or Error thrown while rendering a
+   * frame or by sink stops the batch and is rethrown.
+   */
+  public synchronized void render(Scene scene, List<Camera> cams,
+      FrameSink sink)
+  {
+    AtomicInteger next = new AtomicInteger();
+    delivered = 0;
+    failure = null;
+
+    long start = System.nanoTime();
+
+    workers = Math.min(threads, cams.size());
+    List<Thread> pool = new ArrayList<Thread>();
+    for (int t = 0; t < workers; t++)
+    {
+      Thread w = new Thread(() -> work(scene, cams, sink, next),
+          "BatchRenderer-" + t);
+      pool.add(w);
+      w.start();
+    }
+
+    try
+    {
+      for (Thread w : pool)
+        w.join();
+    }
+    catch (InterruptedException e)
+    {
+      synchronized (lock)
+      {
+        fail(new RuntimeException(e));
+      }
+      for (Thread w : pool)
+        w.interrupt();
+      Thread.currentThread().interrupt();
+    }
+
+    elapsed = System.nanoTime() - start;
+    frames = delivered;
+
+    if (failure instanceof Error)
+      throw (Error) failure;
+    if (failure != null)
+      throw (RuntimeException) failure;
+  }
+
+  /**
+   * Renders frames on the calling thread until none are left, or until the
+   * batch fails.
+   */
+  private void work(Scene scene, List<Camera> cams, FrameSink sink,
+      AtomicInteger next)
+  {
+    OffscreenRenderer r = new OffscreenRenderer(new TileRenderer(
+        Triangle.TILE_SIZE, 1));
+
+    try
+    {
+      for (int i = next.getAndIncrement(); i < cams.size();
+          i = next.getAndIncrement())
+      {
+        Camera cam = cams.get(i);
+        FrameBuffer frame;
+
+        try
+        {
+          frame = r.render(scene, cam);
+        }
+        catch (RuntimeException | Error e)
+        {
+          synchronized (lock)
+          {
+            fail(e);
+          }
+          return;
+        }
+
+        synchronized (lock)
+        {
+          while (delivered != i && failure == null)
+            lock.wait();
+
+          if (failure != null)
+            return;
+
+          try
+          {
+            sink.accept(i, cam, frame);
+          }
+          catch (IOException e)
+          {
+            fail(new UncheckedIOException(e));
+            return;
+          }
+          catch (RuntimeException | Error e)
+          {
+            fail(e);
+            return;
+          }
+
+          delivered++;
+          lock.notifyAll();
+        }
+      }
+    }
+    catch (InterruptedException e)
+    {
+      synchronized (lock)
+      {
+        fail(new RuntimeException(e));
+      }
+    }
+    catch (RuntimeException | Error e)
+    {
+      // Any other worker would otherwise wait forever for this one's frame.
+      synchronized (lock)
+      {
+        fail(e);
+      }
+    }
+    finally
+    {
+      r.shutdown();
+    }
+  }
+
+  /**
+   * Stops the current batch because of e, unless it has already failed. Must
+   * hold lock.
+   */
+  private void fail(Throwable e)
+  {
+    if (failure == null)
+      failure = e;
+    lock.notifyAll();
+  }
+
+  /**
+   * Returns a FrameSink that writes every frame to dir as a PNG named
+   * prefix followed by the index of the frame, such as frame_00042.png.
+   */
+  public static FrameSink pngs(File dir, String prefix)
+  {
+    return (index, cam, frame) ->
+    {
+      File f = new File(dir, String.format("%s%05d.png", prefix, index));
+      if (!ImageIO.write(frame.getImage(), "png", f))
+        throw new IOException("There is no PNG writer!");
+    };
+  }
+
+  /**
+   * Returns count cameras of width w and height h that orbit center at
+   * distance radius, evenly spaced by heading, all pitched by pitch and
+   * looking at center. A negative pitch looks down on center from above.
+   */
+  public static List<Camera> orbit(Vec3 center, double radius, double pitch,
+      int count, double near, double far, double zoom, int w, int h)
+  {
+    List<Camera> r = new ArrayList<Camera>(count);
+
+    for (int i = 0; i < count; i++)
+    {
+      double heading = 2 * Math.PI * i / count;
+      double flat = radius * Math.cos(pitch);
+
+      // The camera looks along (-cos(heading), -sin(heading)) on the ground
+      // and up by pitch, so it stands on the opposite side of center.
+      Vec3 pos = new Vec3(
+          center.x + flat * Math.cos(heading),
+          center.y + flat * Math.sin(heading),
+          center.z - radius * Math.sin(pitch));
+
+      r.add(new Camera(pos, pitch, heading, near, far, zoom, w, h));
+    }
+
+    return r;
+  }
+
+  /**
+   * Returns the number of frames that the last batch delivered.
+   */
+  public int getFrames()
+  {
+    return frames;
+  }
+
+  /**
+   * Returns the frames per second of the last batch.
+   */
+  public double getFramesPerSecond()
+  {
+    return elapsed == 0 ? 0 : frames * 1e9 / elapsed;
+  }
+
+  /**
+   * Returns the frames per second of the last batch, per worker or per core,
+   * whichever is fewer.
+   */
+  public double getFramesPerSecondPerCore()
+  {
+    int cores = Math.min(workers, Runtime.getRuntime().availableProcessors());
+    return cores == 0 ? 0 : getFramesPerSecond() / cores;
+  }
+
+  /**
+   * String representation.
+   */
+  public String toString()
+  {
+    return "***BATCHRENDERER***\nThreads: " + threads + "\nFrames: " + frames +
+    " in " + Matrix.round(elapsed / 1e9, 3) + " s\nFrames/s / Per Core: " +
+    Matrix.round(getFramesPerSecond(), 3) + " / " +
+    Matrix.round(getFramesPerSecondPerCore(), 3) + "\n";
+  }
+}
@@ -41,6 +41,10 @@ public class Box extends Model
     for (int i = 0; i < v.length; i++)
       append(new Rectangle(v[i], sB,
           orient[(i + 1) % 3], orient[(i + 2) % 3], c[i], (i + 1) % 3));
+
+    // A box is closed, so its back faces never need to be drawn.
+    windOutward();
+    culling = TriangleBuffer.CULL_BACK;
   }
 
   /**
@@ -0,0 +1,185 @@
+/**
+ * A camera at pos with a pitch of "pitch" and a heading of "heading", near
+ * clipping plane near, far clipping plane far, and zoom factor zoom. A Camera
+ * is immutable; every frame creates a new one.
+ *
+ * The Camera precomputes a 4x4 view-projection matrix that maps a global
+ * vertex (x, y, z, 1) to clip coordinates (X, Y, Z, W), where W is the depth
+ * of the vertex along the camera's z-axis (negative in front of the camera),
+ * X = a * x_c and Y = -a * y_c for camera coordinates (x_c, y_c), and
+ * Z = b * W + c. Screen coordinates are then (X / W, Y / W) with depth Z.
+ *
+ * Because Z is a function of W, the pipeline only carries (X, Y, W) for each
+ * vertex.
+ *
+ * The view frustum is bounded by the near and far planes and by the edges of a
+ * width by height screen, whose center is at screen coordinates (0, 0).
+ *
+ * @author Justin C
+ */
+public class Camera
+{
+  /**
+   * The position of this Camera.
+   */
+  public final Vec3 pos;
+
+  /**
+   * The pitch and heading of this Camera in radians.
+   */
+  public final double pitch, heading;
+
+  /**
+   * The near and far clipping planes and the zoom factor.
+   */
+  public final double near, far, zoom;
+
+  /**
+   * The projection coefficients: X = a * x_c, Y = -a * y_c, Z = b * W + c.
+   */
+  public final double a, b, c;
+
+  /**
+   * The width and height of the screen in pixels.
+   */
+  public final int width, height;
+
+  /**
+   * The results of frustum(): a bounding sphere lies wholly outside the view
+   * frustum, crosses one of its planes, or lies wholly inside it.
+   */
+  public static final int OUTSIDE = 0, INTERSECTS = 1, INSIDE = 2;
+
+  /**
+   * The half-widths of the screen, padded by a pixel, and the lengths of the
+   * normals (a, kX) and (a, kY) of the side planes X = kX * -W, Y = kY * -W.
+   */
+  private final double kX, kY, nX, nY;
+
+  /**
+   * The Basis that this Camera is aligned at.
+   */
+  public final Basis basis;
+
+  /**
+   * The 4x4 matrix that maps global coordinates to clip coordinates.
+   */
+  public final Matrix viewProjection;
+
+  /**
+   * Constructs a Camera for a screen of the default size.
+   */
+  public Camera(Vec3 p, double ph, double th, double n, double f, double z)
+  {
+    this(p, ph, th, n, f, z, Writer.WIDTH, Writer.HEIGHT);
+  }
+
+  /**
+   * Constructs a Camera for a screen of width w and height h.
+   */
+  public Camera(Vec3 p, double ph, double th, double n, double f, double z,
+      int w, int h)
+  {
+    if (w < 1 || h < 1)
+      throw new IllegalArgumentException("A Camera requires a positive size!");
+
+    pos = new Vec3(p);
+    pitch = ph;
+    heading = th;
+    near = n;
+    far = f;
+    zoom = z;
+    width = w;
+    height = h;
+
+    a = -n * z;
+    b = 2 / (f - n);
+    c = 2 * n / (f - n) - 2;
+
+    kX = w / 2.0 + 1;
+    kY = h / 2.0 + 1;
+    nX = Math.sqrt(a * a + kX * kX);
+    nY = Math.sqrt(a * a + kY * kY);
+
+    basis = new Basis(pos, pitch, heading);
+
+    Matrix projection = new Matrix(new double[][] {
+        { a, 0, 0, 0 },
+        { 0, -a, 0, 0 },
+        { 0, 0, b, c },
+        { 0, 0, 1, 0 } });
+
+    viewProjection = projection.times(basis.homogeneousG_L());
+  }
+
+  /**
+   * Returns the 4x4 matrix that maps the local coordinates of a Model, whose
+   * homogeneous local-to-global matrix is model, to clip coordinates.
+   */
+  public Matrix fuse(Matrix model)
+  {
+    return viewProjection.times(model);
+  }
+
+  /**
+   * Stores the clip coordinates (X, Y, W) of the vertex v under the 4x4 matrix
+   * m in out and returns out. out may be the same Vec3 as v.
+   */
+  public static Vec3 clip(Matrix m, Vec3 v, Vec3 out)
+  {
+    double[] r0 = m.v[0], r1 = m.v[1], r3 = m.v[3];
+    return out.set(
+        r0[0] * v.x + r0[1] * v.y + r0[2] * v.z + r0[3],
+        r1[0] * v.x + r1[1] * v.y + r1[2] * v.z + r1[3],
+        r3[0] * v.x + r3[1] * v.y + r3[2] * v.z + r3[3]);
+  }
+
+  /**
+   * Classifies the sphere with global center v and radius r against the view
+   * frustum. Returns OUTSIDE if nothing in the sphere can be drawn, INSIDE if
+   * every point of it is in front of the near plane, behind the far plane and
+   * on screen, and INTERSECTS otherwise.
+   */
+  public int frustum(Vec3 v, double r)
+  {
+    // The frustum is degenerate, so nothing is classified.
+    if (near <= 0 || far <= near)
+      return INTERSECTS;
+
+    double[] r0 = viewProjection.v[0], r1 = viewProjection.v[1];
+    double[] r3 = viewProjection.v[3];
+    double X = r0[0] * v.x + r0[1] * v.y + r0[2] * v.z + r0[3];
+    double Y = r1[0] * v.x + r1[1] * v.y + r1[2] * v.z + r1[3];
+    double W = r3[0] * v.x + r3[1] * v.y + r3[2] * v.z + r3[3];
+
+    // The signed distances from the center to the near, far, and side planes,
+    // which are negative inside the frustum.
+    double dNear = W + near;
+    double dFar = -far - W;
+    double dL = (-X + kX * W) / nX;
+    double dR = (X + kX * W) / nX;
+    double dB = (-Y + kY * W) / nY;
+    double dT = (Y + kY * W) / nY;
+
+    double d = Math.max(Math.max(dNear, dFar),
+        Math.max(Math.max(dL, dR), Math.max(dB, dT)));
+
+    if (d >= r)
+      return OUTSIDE;
+    if (d < -r)
+      return INSIDE;
+    return INTERSECTS;
+  }
+
+  /**
+   * String representation.
+   */
+  public String toString()
+  {
+    return "***CAMERA***\nPosition: " + pos + "\nPitch / Heading: " +
+    Matrix.round(pitch, 3) + " / " + Matrix.round(heading, 3) +
+    "\nNear / Far / Zoom: " + Matrix.round(near, 3) + " / " +
+    Matrix.round(far, 3) + " / " + Matrix.round(zoom, 3) +
+    "\nWidth / Height: " + width + " / " + height + "\n";
+  }
+}
@@ -0,0 +1,166 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A scripted or recorded path of the camera and of the rotation inputs, one
+ * keyframe per line of a text file:
+ *
+ * tick x y z heading pitch near zoom vX vY vZ
+ *
+ * where (x, y, z) is Movement.pos, the next four are the fields of Rotation
+ * with the same names, and vX, vY, vZ are Rotation's rotation speeds. Blank
+ * lines and everything after a # are ignored, and keyframes must be in
+ * increasing order of tick.
+ *
+ * Between two keyframes, the position and view are interpolated linearly and
+ * the rotation speeds are those of the earlier one. Before the first keyframe
+ * and after the last, the nearest one holds. A recording has a keyframe for
+ * every tick, so it replays exactly; a script only needs a keyframe wherever
+ * the path turns.
+ *
+ * @author Justin C
+ */
+public class CameraPath
+{
+  /**
+   * The number of values of a keyframe.
+   */
+  private static final int VALUES = 11;
+
+  /**
+   * Every keyframe, as the VALUES values of its line in order.
+   */
+  private final double[][] keys;
+
+  /**
+   * Constructs a CameraPath from keyframes in the format of a line of the
+   * file.
+   */
+  public CameraPath(List<double[]> keyframes)
+  {
+    if (keyframes.isEmpty())
+      throw new IllegalArgumentException("A CameraPath requires a keyframe!");
+
+    keys = keyframes.toArray(new double[0][]);
+
+    for (int i = 0; i < keys.length; i++)
+    {
+      if (keys[i].length != VALUES)
+        throw new IllegalArgumentException(
+            "A keyframe requires " + VALUES + " values!");
+      if (i > 0 && keys[i][0] <= keys[i - 1][0])
+        throw new IllegalArgumentException(
+            "Keyframes must be in increasing order of tick!");
+    }
+  }
+
+  /**
+   * Reads a CameraPath from file.
+   */
+  public static CameraPath read(File file) throws IOException
+  {
+    List<double[]> r = new ArrayList<double[]>();
+
+    try (BufferedReader in = new BufferedReader(new FileReader(file)))
+    {
+      int n = 0;
+      for (String line = in.readLine(); line != null; line = in.readLine())
+      {
+        n++;
+        int comment = line.indexOf('#');
+        if (comment >= 0)
+          line = line.substring(0, comment);
+        line = line.trim();
+        if (line.isEmpty())
+          continue;
+
+        String[] s = line.split("\\s+");
+        double[] key = new double[s.length];
+
+        try
+        {
+          for (int i = 0; i < s.length; i++)
+            key[i] = Double.parseDouble(s[i]);
+        }
+        catch (NumberFormatException e)
+        {
+          throw new IOException(
+              "Line " + n + " of " + file + " is not a keyframe!", e);
+        }
+
+        r.add(key);
+      }
+    }
+
+    return new CameraPath(r);
+  }
+
+  /**
+   * Returns the tick of the last keyframe, after which the path holds still.
+   */
+  public long length()
+  {
+    return (long) keys[keys.length - 1][0];
+  }
+
+  /**
+   * Sets Movement.pos, the view of Rotation, and its rotation speeds to their
+   * values on this path at the specified tick.
+   */
+  public void apply(long tick)
+  {
+    // The last keyframe at or before tick, or the first one.
+    int i = 0;
+    while (i + 1 < keys.length && keys[i + 1][0] <= tick)
+      i++;
+
+    double[] a = keys[i];
+    double[] b = i + 1 < keys.length ? keys[i + 1] : a;
+    double t = b == a ? 0 :
+        Math.max(0, Math.min(1, (tick - a[0]) / (b[0] - a[0])));
+
+    Movement.pos = new Vec3(lerp(a, b, 1, t), lerp(a, b, 2, t),
+        lerp(a, b, 3, t));
+    Rotation.heading = lerp(a, b, 4, t);
+    Rotation.pitch = lerp(a, b, 5, t);
+    Rotation.near = lerp(a, b, 6, t);
+    Rotation.zoom = lerp(a, b, 7, t);
+    Rotation.vX = (int) a[8];
+    Rotation.vY = (int) a[9];
+    Rotation.vZ = (int) a[10];
+  }
+
+  /**
+   * Returns value k of the keyframes a and b, interpolated by t in [0, 1].
+   */
+  private static double lerp(double[] a, double[] b, int k, double t)
+  {
+    return a[k] + (b[k] - a[k]) * t;
+  }
+
+  /**
+   * Returns the current values of Movement and Rotation as the keyframe of
+   * the specified tick, in the format of a line of the file.
+   */
+  public static String keyframe(long tick)
+  {
+    Vec3 p = Movement.pos;
+    return tick + " " + p.x + " " + p.y + " " + p.z + " " + Rotation.heading +
+        " " + Rotation.pitch + " " + Rotation.near + " " + Rotation.zoom + " " +
+        Rotation.vX + " " + Rotation.vY + " " + Rotation.vZ;
+  }
+
+  /**
+   * String representation.
+   */
+  public String toString()
+  {
+    return "***CAMERAPATH***\nKeyframes: " + keys.length + "\nLength: " +
+    length() + " ticks\nFirst: " + Arrays.toString(keys[0]) + "\n";
+  }
+}
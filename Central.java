@@ -2,11 +2,26 @@ import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.event.KeyEvent;
-import java.util.ArrayList;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The goal of this project is to explore 3D rendering in Java.
  *
+ * Every tick ends by building a Scene of the models and camera, which the
+ * render thread then draws. Scenes are triple-buffered: the simulation thread
+ * fills one, the render thread draws another, and the latest complete one
+ * waits between them in an AtomicReference. Either thread swaps its own Scene
+ * for the waiting one, so neither ever locks or waits for the other.
+ *
+ * The camera is normally steered by the mouse and keyboard. Given a script,
+ * it follows the script's CameraPath instead, one keyframe per tick, so that
+ * every run sees exactly the same frames. With -Dvec3d.record=file, the path
+ * that the camera takes is recorded to file in the same format.
+ *
  * @author Justin C
  */
 public class Central extends Controller
@@ -19,12 +34,71 @@ public class Central extends Controller
   /**
    * Used to count the number of triangles being rendered.
    */
-  private int trisCount, updateTris, pipelineSize;
+  private int trisCount, updateTris;
+  private volatile int pipelineSize;
+
+  /**
+   * Whether the depths of the render target are cleared with epoch stamps.
+   */
+  public static final boolean STAMPED =
+      !"false".equals(System.getProperty("vec3d.stamped"));
+
+  /**
+   * The render target that every frame is drawn on. Lives across frames and
+   * is only reallocated when the resolution changes.
+   */
+  private FrameBuffer frame;
+
+  /**
+   * The list of all triangles to be rendered, refilled every frame.
+   */
+  private final TriangleBuffer pipeline = new TriangleBuffer();
+
+  /**
+   * Renders the tiles of every frame.
+   */
+  private final TileRenderer tiles =
+      new TileRenderer(Triangle.TILE_SIZE, Triangle.THREADS);
+
+  /**
+   * The latest complete Scene, and the Scenes that the simulation thread is
+   * building and the render thread is drawing.
+   */
+  private final AtomicReference<Scene> latest =
+      new AtomicReference<Scene>(new Scene());
+  private Scene building = new Scene(), drawing = new Scene();
+
+  /**
+   * The number of ticks so far.
+   */
+  private long ticks;
+
+  /**
+   * The path that the camera follows instead of the mouse and keyboard, or
+   * null.
+   */
+  public CameraPath script;
+
+  /**
+   * The file that the path of the camera is recorded to, or null.
+   */
+  private PrintWriter recording;
+
+  /**
+   * The number of ticks that have been simulated, which excludes paused ticks.
+   */
+  private long steps;
+
+  /**
+   * Whether the latest Scene was built while paused, so that nothing has
+   * changed since.
+   */
+  private boolean frozen;
 
   /**
    * Stores GUI info.
    */
-  private boolean paused, showHUD;
+  private volatile boolean paused, showHUD;
 
   /**
    * Resets constants.
@@ -44,10 +118,24 @@ public class Central extends Controller
     System.out.println(Arguments.INSTRUCTIONS);
     Arguments.initialize();
     reset();
+
+    String record = System.getProperty("vec3d.record");
+    if (record != null)
+      try
+      {
+        recording = new PrintWriter(new FileWriter(record), true);
+        recording.println("# tick x y z heading pitch near zoom vX vY vZ");
+      }
+      catch (IOException e)
+      {
+        e.printStackTrace();
+      }
   }
 
   public void tick(long frameCount)
   {
+    long start = Profiler.start();
+
     // Triangle counter.
     updateTris %= 60;
     updateTris++;
@@ -55,9 +143,70 @@ public class Central extends Controller
       trisCount = pipelineSize;
 
     if (paused)
-      return;
+    {
+      // Nothing has changed since the last Scene, which is still current.
+      if (frozen)
+      {
+        Profiler.stop(Profiler.TICK, start);
+        return;
+      }
+      frozen = true;
+    }
+    else
+    {
+      frozen = false;
+      simulate();
+    }
+
+    // Hands the state of this tick to the render thread.
+    long scene = Profiler.start();
+    building.clear();
+    building.tick = ++ticks;
+    building.camera = new Camera(Movement.pos, Rotation.pitch,
+        Rotation.heading, Rotation.near, Rotation.far, Rotation.zoom,
+        Writer.WIDTH, Writer.HEIGHT);
+    building.shadows = shadows;
+
+    building.addAll(Model.pipeline);
+    building.addAll(AnimatedModel.pipeline);
+
+    building = latest.getAndSet(building);
+    Profiler.stop(Profiler.SCENE, scene);
+    Profiler.stop(Profiler.TICK, start);
+  }
 
-    // Camera controls.
+  /**
+   * Moves the camera and every model by a tick.
+   */
+  private void simulate()
+  {
+    // Camera controls, unless the camera follows a script.
+    if (script != null)
+      script.apply(steps);
+    else
+      steer();
+
+    for (Model p : Model.pipeline)
+      p.tick();
+
+    for (AnimatedModel p : AnimatedModel.pipeline)
+      p.tick();
+
+    // All other tick methods.
+    Rotation.tick();
+    if (script == null)
+      Movement.tick(Rotation.heading);
+
+    if (recording != null)
+      recording.println(CameraPath.keyframe(steps));
+    steps++;
+  }
+
+  /**
+   * Turns the camera toward the edge of the screen that the mouse is near.
+   */
+  private void steer()
+  {
     if (mouseOver(0, 0, 200, Writer.HEIGHT))
       Rotation.slowL();
     if (mouseOver(Writer.WIDTH - 200, 0, 200, Writer.HEIGHT))
@@ -75,16 +224,6 @@ public class Central extends Controller
       Rotation.fastU();
     if (mouseOver(0, Writer.HEIGHT - 100, Writer.WIDTH, 100))
       Rotation.fastD();
-
-    for (Model p : Model.pipeline)
-      p.tick();
-
-    for (AnimatedModel p : AnimatedModel.pipeline)
-      p.tick();
-
-    // All other tick methods.
-    Rotation.tick();
-    Movement.tick(Rotation.heading);
   }
 
   public void render(Graphics g, long frameCount)
@@ -95,43 +234,62 @@ public class Central extends Controller
     g2.setColor(Color.black);
     g2.fillRect(0, 0, Writer.WIDTH, Writer.HEIGHT);
 
-    // The list of all triangles to be rendered.
-    ArrayList<Triangle> pipeline = new ArrayList<Triangle>();
+    // Takes the latest Scene, unless it is already being drawn.
+    if (latest.get().tick > drawing.tick)
+      drawing = latest.getAndSet(drawing);
 
-    for (Model p : Model.pipeline)
-      p.addTo(pipeline, shadows);
+    Camera cam = drawing.camera;
+    if (cam == null)
+      return;
 
-    for (AnimatedModel p : AnimatedModel.pipeline)
-      p.addTo(pipeline, shadows);
+    // Refills the list of all triangles to be rendered.
+    long start = Profiler.start();
+    pipeline.clear();
+    drawing.addTo(pipeline, cam);
+    Profiler.stop(Profiler.PIPELINE, start);
 
     // Gets the number of triangle to be rendered.
     pipelineSize = pipeline.size();
 
     // Draws all entities.
-    g2.drawImage(
-        Triangle.getImage(pipeline,
-            new Basis(Movement.pos, Rotation.pitch, Rotation.heading),
-            Writer.WIDTH, Writer.HEIGHT,
-            Rotation.near, Rotation.far, Rotation.zoom), 0, 0, null);
+    frame = FrameBuffer.reuse(frame, Writer.WIDTH, Writer.HEIGHT, STAMPED);
+    Triangle.getImage(pipeline, cam, frame, tiles);
+    Profiler.record(Profiler.TRANSFORM, tiles.transformTime);
+    Profiler.record(Profiler.RASTER, tiles.rasterTime);
+    Telemetry.count(pipelineSize, tiles.culled, tiles.clipped, tiles.pixels);
+
+    start = Profiler.start();
+    g2.drawImage(frame.getImage(), 0, 0, null);
 
     if (showHUD)
     {
       // A text array that stores HUD info.
       String[] textBox = {
           "FPS: " + frameCount,
-          "Position: " + Movement.pos,
-          "Shadows: " + shadows,
-          "Heading / Pitch: " + Matrix.round(Rotation.heading, 3) +
-              " / " + Matrix.round(Rotation.pitch, 3),
-          "View Length / Zoom: " + Matrix.round(Rotation.near, 3) +
-              " / " + Matrix.round(Rotation.zoom, 3),
-          "Triangle Count: " + trisCount
+          "Frame Time / Jitter: " + Matrix.round(pacer.getMean(), 2) +
+              " / " + Matrix.round(pacer.getJitter(), 2) + " ms",
+          "Position: " + cam.pos,
+          "Shadows: " + drawing.shadows,
+          "Heading / Pitch: " + Matrix.round(cam.heading, 3) +
+              " / " + Matrix.round(cam.pitch, 3),
+          "View Length / Zoom: " + Matrix.round(cam.near, 3) +
+              " / " + Matrix.round(cam.zoom, 3),
+          "Triangle Count: " + trisCount,
+          "Culled / Clipped: " + tiles.culled + " / " + tiles.clipped
       };
 
       // Draws the HUD.
       for (int i = 0; i < textBox.length; i++)
         Writer.showText(g2, textBox[i], 10, 20 * i + 20);
 
+      // Draws the stage timers below it.
+      if (Profiler.enabled)
+      {
+        String[] timers = Profiler.summary();
+        for (int i = 0; i < timers.length; i++)
+          Writer.showText(g2, timers[i], 10, 20 * (i + textBox.length) + 40);
+      }
+
       // Draws the center pointer.
       g2.setColor(Color.white);
       g2.fillRect(Writer.WIDTH / 2 - 3, Writer.HEIGHT / 2 - 3, 8, 8);
@@ -150,6 +308,16 @@ public class Central extends Controller
       Writer.showText(g2, "PAUSED", 490);
       Writer.setMainFont("times new roman", 0, 14);
     }
+
+    Profiler.stop(Profiler.BLIT, start);
+  }
+
+  /**
+   * Nothing is rendered while paused.
+   */
+  public boolean idle()
+  {
+    return paused;
   }
 
   public void keyPressed()
@@ -169,10 +337,36 @@ public class Central extends Controller
 
     if (keyCode == KeyEvent.VK_E)
       showHUD = !showHUD;
+    if (keyCode == KeyEvent.VK_T)
+    {
+      Profiler.reset();
+      Profiler.enabled = !Profiler.enabled;
+    }
+    if (keyCode == KeyEvent.VK_C)
+      dumpTimers();
     if (keyCode == KeyEvent.VK_CONTROL)
       paused = !paused;
   }
 
+  /**
+   * Writes the stage timers to a CSV file in the working directory, named by
+   * the current time.
+   */
+  private void dumpTimers()
+  {
+    File f = new File("timers-" + System.currentTimeMillis() + ".csv");
+
+    try
+    {
+      Profiler.writeCSV(f);
+      System.out.println("Stage timers written to " + f.getAbsolutePath());
+    }
+    catch (IOException e)
+    {
+      e.printStackTrace();
+    }
+  }
+
   public void wheelInput()
   {
     Rotation.scroll(wheel);
@@ -11,6 +11,10 @@ import java.awt.event.MouseWheelListener;
  * Organizes mouse & keyboard inputs and ensures that every subclass has
  * initialize, tick, render, and input methods. 
  * 
+ * tick and render are called on two different threads, and input methods on
+ * the event dispatch thread, so whatever tick hands to render must be safely
+ * published between them.
+ * 
  * @author Justin C
  */
 public abstract class Controller
@@ -45,6 +49,12 @@ public abstract class Controller
    */
   public int wheel;
 
+  /**
+   * Paces the render loop and measures its frame times. Set by the Loader
+   * that runs this Controller.
+   */
+  public FramePacer pacer = new FramePacer(0);
+
   public abstract void initialize();
 
   public abstract void tick(long frameCount);
@@ -70,6 +80,15 @@ public abstract class Controller
    */
   public abstract void mouseInput(int eventDescription);
 
+  /**
+   * Returns whether nothing needs to be rendered, such as while paused. Idle
+   * Controllers are not rendered until they stop being idle.
+   */
+  public boolean idle()
+  {
+    return false;
+  }
+
   /**
    * Detects if the mouse is within the rectangle that has a top-left corner of
    * (x, y) and dimensions (w, h).
@@ -0,0 +1,240 @@
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * A color buffer and a z-inverse buffer of the same dimensions. The color
+ * buffer is the int[] that backs a TYPE_INT_ARGB BufferedImage, so pixels are
+ * written directly instead of through BufferedImage.setRGB. Both buffers are
+ * indexed by y * width + x.
+ *
+ * A FrameBuffer is meant to live across frames and be cleared between them.
+ * When constructed with stamps, the z-inverse buffer is never filled; instead
+ * every pixel remembers the epoch in which its depth was last written, and a
+ * depth from an older epoch reads as FAR. Clearing the depths is then O(1).
+ *
+ * The depths are also summarized by a coarse hierarchical z-buffer: hiz holds,
+ * for every BLOCK x BLOCK block of pixels, a z-inverse that is at least the
+ * farthest depth in the block. Anything whose nearest depth is at or behind it
+ * cannot be drawn in that block. Whoever writes zib directly may only bring
+ * depths nearer, which keeps every bound valid, and must mark the block dirty
+ * so that its bound is tightened the next time farthest() reads it.
+ *
+ * @author Justin C
+ */
+public class FrameBuffer
+{
+  /**
+   * The z-inverse of the far clipping plane.
+   */
+  public static final double FAR = -0.25;
+
+  /**
+   * The width and height of this FrameBuffer in pixels.
+   */
+  public final int width, height;
+
+  /**
+   * The ARGB color of every pixel.
+   */
+  public final int[] rgb;
+
+  /**
+   * Corresponds to the inverses of the filled depths of each pixel. zib stands
+   * for zInverseBuffer. Depth is measured along the z-axis that faces the
+   * camera, so further objects have a higher zib.
+   */
+  public final double[] zib;
+
+  /**
+   * The epoch in which each depth of zib was written, or null if zib is
+   * cleared by filling it.
+   */
+  public final int[] stamp;
+
+  /**
+   * The current epoch. A depth is valid only if its stamp equals epoch.
+   */
+  public int epoch = 1;
+
+  /**
+   * The width and height in pixels of a block of the hierarchical z-buffer.
+   */
+  public static final int BLOCK = 8;
+
+  /**
+   * The number of blocks along the width and the height.
+   */
+  public final int blocksX, blocksY;
+
+  /**
+   * A bound on the farthest z-inverse of every block, indexed by
+   * by * blocksX + bx. Exact for blocks that are not dirty.
+   */
+  private final double[] hiz;
+
+  /**
+   * Whether the depths of each block have been written since its entry of hiz
+   * was found.
+   */
+  public final boolean[] dirty;
+
+  /**
+   * The image that shares its pixels with rgb.
+   */
+  private final BufferedImage img;
+
+  /**
+   * Constructs a FrameBuffer with dimension (w, h) whose colors are
+   * transparent and whose depths lie on the far plane. If stamped, depths are
+   * cleared by advancing the epoch instead of filling zib.
+   */
+  public FrameBuffer(int w, int h, boolean stamped)
+  {
+    if (w < 1 || h < 1)
+      throw new IllegalArgumentException(
+          "A FrameBuffer cannot have nonpositive dimensions!");
+
+    width = w;
+    height = h;
+    img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+    rgb = ((DataBufferInt) img.getRaster().getDataBuffer()).getData();
+    zib = new double[w * h];
+    stamp = stamped ? new int[w * h] : null;
+
+    blocksX = (w + BLOCK - 1) / BLOCK;
+    blocksY = (h + BLOCK - 1) / BLOCK;
+    hiz = new double[blocksX * blocksY];
+    dirty = new boolean[blocksX * blocksY];
+    Arrays.fill(hiz, FAR);
+
+    if (!stamped)
+      // This essentially clips the far plane.
+      Arrays.fill(zib, FAR);
+  }
+
+  /**
+   * Constructs a FrameBuffer with dimension (w, h) that fills zib when cleared.
+   */
+  public FrameBuffer(int w, int h)
+  {
+    this(w, h, false);
+  }
+
+  /**
+   * Returns fb if it has dimension (w, h), or a new FrameBuffer of dimension
+   * (w, h) that clears itself the same way otherwise. fb may be null.
+   */
+  public static FrameBuffer reuse(FrameBuffer fb, int w, int h, boolean stamped)
+  {
+    if (fb != null && fb.width == w && fb.height == h)
+      return fb;
+
+    return new FrameBuffer(w, h, fb == null ? stamped : fb.stamp != null);
+  }
+
+  /**
+   * Makes every color transparent and moves every depth to the far plane.
+   */
+  public void clear()
+  {
+    Arrays.fill(rgb, 0);
+    Arrays.fill(hiz, FAR);
+    Arrays.fill(dirty, false);
+
+    if (stamp == null)
+    {
+      Arrays.fill(zib, FAR);
+      return;
+    }
+
+    // Stamps are only reset once every 2^31 - 1 frames.
+    if (epoch == Integer.MAX_VALUE)
+    {
+      Arrays.fill(stamp, 0);
+      epoch = 0;
+    }
+
+    epoch++;
+  }
+
+  /**
+   * Returns the z-inverse of the pixel at index i.
+   */
+  public double depth(int i)
+  {
+    return stamp == null || stamp[i] == epoch ? zib[i] : FAR;
+  }
+
+  /**
+   * Sets the z-inverse of the pixel at index i.
+   */
+  public void setDepth(int i, double depth_i)
+  {
+    zib[i] = depth_i;
+
+    if (stamp != null)
+      stamp[i] = epoch;
+
+    int b = block(i % width, i / width);
+    hiz[b] = Math.max(hiz[b], depth_i);
+    dirty[b] = true;
+  }
+
+  /**
+   * Returns the index of the block that contains the pixel (x, y).
+   */
+  public int block(int x, int y)
+  {
+    return (y / BLOCK) * blocksX + x / BLOCK;
+  }
+
+  /**
+   * Returns a bound on the farthest z-inverse in block b without tightening
+   * it, which is cheaper than farthest() when the block is dirty.
+   */
+  public double bound(int b)
+  {
+    return hiz[b];
+  }
+
+  /**
+   * Returns the farthest z-inverse in block b, first finding it again if the
+   * block is dirty. Blocks that lie in disjoint pixel rectangles may be read
+   * concurrently.
+   */
+  public double farthest(int b)
+  {
+    if (!dirty[b])
+      return hiz[b];
+
+    int x0 = (b % blocksX) * BLOCK;
+    int y0 = (b / blocksX) * BLOCK;
+    int x1 = Math.min(width, x0 + BLOCK);
+    int y1 = Math.min(height, y0 + BLOCK);
+
+    double max = Double.NEGATIVE_INFINITY;
+    for (int y = y0; y < y1; y++)
+      for (int i = y * width + x0, end = y * width + x1; i < end; i++)
+        max = Math.max(max, depth(i));
+
+    dirty[b] = false;
+    return hiz[b] = max;
+  }
+
+  /**
+   * Returns the image that displays the colors of this FrameBuffer.
+   */
+  public BufferedImage getImage()
+  {
+    return img;
+  }
+
+  /**
+   * String representation.
+   */
+  public String toString()
+  {
+    return "***FRAMEBUFFER***\nDimensions: " + width + " x " + height + "\n";
+  }
+}
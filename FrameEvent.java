@@ -0,0 +1,34 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A JDK Flight Recorder event for every frame of the render loop, which lasts
+ * from the start of the frame until its buffer is shown.
+ *
+ * @author Justin C
+ */
+@Name("vec3d.Frame")
+@Label("Frame")
+@Category("vec3d")
+@Description("A frame rendered and shown by the render loop")
+public class FrameEvent extends Event
+{
+  @Label("Triangles")
+  @Description("The number of triangles in the pipeline")
+  public int triangles;
+
+  @Label("Culled")
+  @Description("The number of triangles culled for facing the wrong way")
+  public int culled;
+
+  @Label("Clipped")
+  @Description("The number of triangles entirely behind the near plane")
+  public int clipped;
+
+  @Label("Pixels Written")
+  @Description("The number of pixels that passed the depth test")
+  public long pixels;
+}
@@ -0,0 +1,167 @@
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Paces a render loop at a target frame rate and keeps statistics of the time
+ * between its frames.
+ *
+ * await() parks the calling thread until shortly before the next frame is
+ * due, since parkNanos may wake late by as much as the resolution of the
+ * system timer, and spins for the rest of the wait. A frame that is late by
+ * more than a whole period does not make the following frames hurry to catch
+ * up; the schedule restarts from it instead.
+ *
+ * The statistics cover the frames of the last full second, and may be read on
+ * any thread.
+ *
+ * @author Justin C
+ */
+public class FramePacer
+{
+  /**
+   * The number of nanoseconds before a frame is due at which await() stops
+   * parking and starts spinning.
+   */
+  public static final long SPIN = 1000000;
+
+  /**
+   * The number of nanoseconds per frame, or 0 if frames are not paced.
+   */
+  private final long period;
+
+  /**
+   * The time at which the next frame is due, and at which the last frame
+   * began.
+   */
+  private long next, last;
+
+  /**
+   * The number, sum, sum of squares, and maximum of the frame times of the
+   * current second, in nanoseconds, and the time at which it began.
+   */
+  private int count;
+  private double sum, sumSquares;
+  private long worst, second;
+
+  /**
+   * The statistics of the last full second: its frame rate, and the mean,
+   * standard deviation, and maximum of its frame times in milliseconds.
+   */
+  private volatile int frameRate;
+  private volatile double mean, jitter, max;
+
+  /**
+   * Constructs a FramePacer that paces frames at fps frames per second, or
+   * does not pace them if fps is not positive.
+   */
+  public FramePacer(double fps)
+  {
+    period = fps > 0 ? Math.round(1000000000 / fps) : 0;
+    reset();
+  }
+
+  /**
+   * Restarts the schedule and the current second from now, without counting
+   * the time since the last frame. Called after the loop has been idle.
+   */
+  public void reset()
+  {
+    last = next = second = System.nanoTime();
+    count = 0;
+    sum = sumSquares = worst = 0;
+  }
+
+  /**
+   * Waits until the next frame is due and records the time since the last
+   * one.
+   */
+  public void await()
+  {
+    long now = System.nanoTime();
+
+    if (period > 0)
+    {
+      next += period;
+
+      // Skips the frames that are too late to be worth catching up on.
+      if (now - next > period)
+        next = now;
+
+      for (long wait = next - now - SPIN; wait > 0;
+          wait = next - System.nanoTime() - SPIN)
+        LockSupport.parkNanos(wait);
+
+      while (next - System.nanoTime() > 0)
+        Thread.onSpinWait();
+
+      now = System.nanoTime();
+    }
+
+    long time = now - last;
+    last = now;
+    count++;
+    sum += time;
+    sumSquares += (double) time * time;
+    worst = Math.max(worst, time);
+
+    // Publishes the statistics of every full second.
+    if (now - second >= 1000000000)
+    {
+      double m = sum / count;
+      frameRate = count;
+      mean = m / 1e6;
+      jitter = Math.sqrt(Math.max(0, sumSquares / count - m * m)) / 1e6;
+      max = worst / 1e6;
+
+      second = now;
+      count = 0;
+      sum = sumSquares = worst = 0;
+    }
+  }
+
+  /**
+   * Returns the number of frames in the last full second.
+   */
+  public int getFrameRate()
+  {
+    return frameRate;
+  }
+
+  /**
+   * Returns the mean time between frames in the last full second, in
+   * milliseconds.
+   */
+  public double getMean()
+  {
+    return mean;
+  }
+
+  /**
+   * Returns the standard deviation of the time between frames in the last
+   * full second, in milliseconds.
+   */
+  public double getJitter()
+  {
+    return jitter;
+  }
+
+  /**
+   * Returns the longest time between frames in the last full second, in
+   * milliseconds.
+   */
+  public double getMax()
+  {
+    return max;
+  }
+
+  /**
+   * String representation.
+   */
+  public String toString()
+  {
+    return "***FRAMEPACER***\nTarget: " +
+    (period > 0 ? Matrix.round(1e9 / period, 3) + " fps" : "unpaced") +
+    "\nFPS: " + frameRate + "\nMean / Jitter / Max: " +
+    Matrix.round(mean, 3) + " / " + Matrix.round(jitter, 3) + " / " +
+    Matrix.round(max, 3) + " ms\n";
+  }
+}
@@ -0,0 +1,17 @@
+import java.io.IOException;
+
+/**
+ * Receives the frames of a BatchRenderer, one at a time and in the order of
+ * their cameras.
+ *
+ * @author Justin C
+ */
+public interface FrameSink
+{
+  /**
+   * Receives frame, the index-th frame of the batch, as seen by cam. frame is
+   * reused once this method returns, so its pixels must be copied or written
+   * out before then.
+   */
+  void accept(int index, Camera cam, FrameBuffer frame) throws IOException;
+}
@@ -0,0 +1,217 @@
+import java.util.Arrays;
+
+/**
+ * The lights that shade every triangle with shadows, and the stage of the
+ * pipeline that applies them.
+ *
+ * A headlight shines along the view of whichever camera a frame is seen
+ * through, a directional light shines along a fixed global direction, and a
+ * point light shines from a fixed global position. Every light shades both
+ * sides of a triangle alike: its contribution is its intensity times the
+ * falloff of the cosine between the triangle's normal and the light. The
+ * falloff, cos^(1 / 2.4), is read from a table instead of calling Math.pow,
+ * and the contributions of every light are added.
+ *
+ * Triangles are shaded as a Mesh is added to a pipeline. Rather than turning
+ * every normal of the Mesh into global coordinates, the lights are turned
+ * into the coordinates of the Mesh once, so shading a triangle only takes a
+ * dot product and a lookup per light. The color of a shaded triangle is
+ * opaque.
+ *
+ * A Lighting is only added to while it is being built; afterwards it may be
+ * shared by several threads and Scenes.
+ *
+ * @author Justin C
+ */
+public class Lighting
+{
+  /**
+   * The kinds of light.
+   */
+  public static final int HEADLIGHT = 0, DIRECTIONAL = 1, POINT = 2;
+
+  /**
+   * The lighting that every Scene starts with: a single headlight, which
+   * shades as this project always has. It must not be added to.
+   */
+  public static final Lighting DEFAULT = new Lighting().add(HEADLIGHT, null, 1);
+
+  /**
+   * The number of steps of the falloff table between cosines of 0 and 1.
+   */
+  public static final int SIZE = 1024;
+
+  /**
+   * The falloff of every step from 0 to SIZE, with a copy of the last step so
+   * that interpolating never reads past the end.
+   */
+  private static final double[] FALLOFF = new double[SIZE + 2];
+
+  static
+  {
+    // 2.4 produces a good shading effect based on testing values
+    for (int i = 0; i <= SIZE; i++)
+      FALLOFF[i] = Math.pow((double) i / SIZE, 1 / 2.4);
+    FALLOFF[SIZE + 1] = FALLOFF[SIZE];
+  }
+
+  /**
+   * The kind, vector, and intensity of every light. The vector is the unit
+   * direction of a directional light, the position of a point light, or
+   * unused for a headlight.
+   */
+  private int[] kinds = new int[0];
+  private double[] xyz = new double[0];
+  private double[] intensities = new double[0];
+
+  /**
+   * Adds a light of the specified kind, vector, and intensity, where an
+   * intensity of 1 leaves a color facing the light as it is. Returns this.
+   */
+  public Lighting add(int kind, Vec3 v, double intensity)
+  {
+    if (kind < HEADLIGHT || kind > POINT)
+      throw new IllegalArgumentException("There is no kind of light " + kind + "!");
+    if (kind != HEADLIGHT && v == null)
+      throw new IllegalArgumentException("This light requires a vector!");
+
+    Vec3 u = kind == DIRECTIONAL ? v.unit() : v;
+    int n = kinds.length;
+
+    kinds = Arrays.copyOf(kinds, n + 1);
+    xyz = Arrays.copyOf(xyz, 3 * n + 3);
+    intensities = Arrays.copyOf(intensities, n + 1);
+
+    kinds[n] = kind;
+    if (u != null)
+    {
+      xyz[3 * n] = u.x;
+      xyz[3 * n + 1] = u.y;
+      xyz[3 * n + 2] = u.z;
+    }
+    intensities[n] = intensity;
+
+    return this;
+  }
+
+  /**
+   * Returns the number of lights.
+   */
+  public int size()
+  {
+    return kinds.length;
+  }
+
+  /**
+   * Returns the falloff of a cosine c in [0, 1], interpolated in the table.
+   */
+  public static double falloff(double c)
+  {
+    double x = Math.min(c, 1) * SIZE;
+    int i = (int) x;
+    return FALLOFF[i] + (FALLOFF[i + 1] - FALLOFF[i]) * (x - i);
+  }
+
+  /**
+   * Shades the triangles of pipeline from index start on that have SHADOWS,
+   * which must be every triangle of mesh in order, as seen through cam. The
+   * 4x4 matrix transform takes the coordinates of mesh to global coordinates
+   * by a rotation and a translation, or is null if they are global.
+   */
+  public void shade(Mesh mesh, Matrix transform, Camera cam,
+      TriangleBuffer pipeline, int start)
+  {
+    int n = kinds.length;
+    if (n == 0)
+      return;
+
+    // Every light in the coordinates of mesh: global = R * local + t, so
+    // local = R^T * (global - t). The pipeline belongs to the caller, so it
+    // lends the space even while other threads share this Lighting.
+    double[] local = pipeline.scratch(3 * n);
+    double[] w = cam.viewProjection.v[3];
+
+    for (int k = 0; k < n; k++)
+    {
+      double x = xyz[3 * k], y = xyz[3 * k + 1], z = xyz[3 * k + 2];
+      if (kinds[k] == HEADLIGHT)
+      {
+        // The camera's z-axis, along which W is measured.
+        x = w[0];
+        y = w[1];
+        z = w[2];
+      }
+
+      if (transform != null)
+      {
+        double[][] m = transform.v;
+        if (kinds[k] == POINT)
+        {
+          x -= m[0][3];
+          y -= m[1][3];
+          z -= m[2][3];
+        }
+
+        double lx = m[0][0] * x + m[1][0] * y + m[2][0] * z;
+        double ly = m[0][1] * x + m[1][1] * y + m[2][1] * z;
+        double lz = m[0][2] * x + m[1][2] * y + m[2][2] * z;
+        x = lx;
+        y = ly;
+        z = lz;
+      }
+
+      local[3 * k] = x;
+      local[3 * k + 1] = y;
+      local[3 * k + 2] = z;
+    }
+
+    double[] normal = mesh.normal, v = mesh.xyz;
+    int[] index = mesh.index, flags = pipeline.flags, rgb = pipeline.rgb;
+    int len = Math.min(mesh.triangleCount(), pipeline.size() - start);
+
+    for (int i = 0; i < len; i++)
+    {
+      int t = start + i;
+      if ((flags[t] & TriangleBuffer.SHADOWS) == 0)
+        continue;
+
+      double nx = normal[3 * i], ny = normal[3 * i + 1], nz = normal[3 * i + 2];
+      double s = 0;
+
+      for (int k = 0; k < n; k++)
+      {
+        double lx = local[3 * k], ly = local[3 * k + 1], lz = local[3 * k + 2];
+        double d = nx * lx + ny * ly + nz * lz;
+
+        if (kinds[k] == POINT)
+        {
+          // Points from the centroid of the triangle to the light.
+          int a = 3 * index[3 * i], b = 3 * index[3 * i + 1];
+          int c = 3 * index[3 * i + 2];
+          lx -= (v[a] + v[b] + v[c]) / 3;
+          ly -= (v[a + 1] + v[b + 1] + v[c + 1]) / 3;
+          lz -= (v[a + 2] + v[b + 2] + v[c + 2]) / 3;
+          d = (nx * lx + ny * ly + nz * lz) /
+              Math.sqrt(lx * lx + ly * ly + lz * lz);
+        }
+
+        s += intensities[k] * falloff(Math.abs(d));
+      }
+
+      int color = rgb[t];
+      int rr = Math.min(255, (int) (((color >> 16) & 0xFF) * s));
+      int gg = Math.min(255, (int) (((color >> 8) & 0xFF) * s));
+      int bb = Math.min(255, (int) ((color & 0xFF) * s));
+
+      rgb[t] = (255 << 24) | (rr << 16) | (gg << 8) | bb;
+    }
+  }
+
+  /**
+   * String representation.
+   */
+  public String toString()
+  {
+    return "***LIGHTING***\nLights: " + kinds.length + "\n";
+  }
+}
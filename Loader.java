@@ -3,26 +3,63 @@ import javax.swing.JFrame;
 import java.awt.Canvas;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Implements the initialize, tick, render, and input methods of a specified
- * Controller. It ensures that the tick/render loop operates on an individual
- * Thread, that a JFrame is constructed, and that this component is linked to
+ * Controller. It ensures that ticks and renders operate on two individual
+ * Threads, that a JFrame is constructed, and that this component is linked to
  * the JFrame and appropriate input listeners.
  *
+ * The simulation thread ticks at a fixed rate, whether rendering keeps up or
+ * not, while the render thread renders as often as it can. A slow frame never
+ * delays a tick. If the simulation itself falls more than MAX_LAG ticks
+ * behind, the missed ticks are dropped instead of being caught up on.
+ *
+ * Rendering is paced by a FramePacer at the frame rate given by the system
+ * property vec3d.fps, or as fast as possible if it is 0, the default. While
+ * the Controller is idle or the window is not focused, nothing is rendered
+ * and the render thread sleeps.
+ *
+ * Every frame is reported to Telemetry, which exposes it to JDK Flight
+ * Recorder and to JMX.
+ *
  * @author Justin C
  */
 public class Loader extends Canvas implements Runnable
 {
   /**
-   * The thread that will manage the execution of the tick/render methods.
+   * The threads that will manage the execution of the tick and render
+   * methods.
+   */
+  private Thread simulation, thread;
+
+  /**
+   * Stores whether or not the tick and render loops should continue running.
+   */
+  private volatile boolean running;
+
+  /**
+   * The number of ticks that the simulation may fall behind before it skips
+   * ahead.
+   */
+  public static final int MAX_LAG = 5;
+
+  /**
+   * The number of nanoseconds that the render thread sleeps at a time while
+   * idle.
+   */
+  public static final long IDLE = 50000000;
+
+  /**
+   * The window that this component is drawn in.
    */
-  private Thread thread;
+  private JFrame frame;
 
   /**
-   * Stores whether or not the tick/render loop should continue running.
+   * Paces the render loop and measures its frame times.
    */
-  private boolean running;
+  private final FramePacer pacer;
 
   /**
    * The Controller whose initialize, tick, render, and input methods will be
@@ -34,25 +71,43 @@ public class Loader extends Canvas implements Runnable
    * The number of rendering operations that have been successfully executed
    * within the last second.
    */
-  private int frameRate;
+  private volatile int frameRate;
 
   /**
    * The number of nanoseconds that are intended to elapse per tick.
    */
-  private double nsPerTick;
+  private long nsPerTick;
 
   /**
    * Calls control's initialize() method, adds all input listeners, ensures that
    * all events are visible to this component, constructs an unadjustable
    * JFrame, links the JFrame to this component, and starts the tick/render
-   * loop.
+   * loop. Frames are paced at the rate given by the system property vec3d.fps.
    */
   public Loader(int width, int height, String title, double tickPerSec, Controller c)
   {
-    nsPerTick = 1000000000 / tickPerSec;
+    this(width, height, title, tickPerSec,
+        Double.parseDouble(System.getProperty("vec3d.fps", "0")), c);
+  }
+
+  /**
+   * Constructs a Loader that renders at most framesPerSec frames per second,
+   * or as many as possible if framesPerSec is 0.
+   */
+  public Loader(int width, int height, String title, double tickPerSec,
+      double framesPerSec, Controller c)
+  {
+    if (tickPerSec <= 0 || framesPerSec < 0)
+      throw new IllegalArgumentException(
+          "A Loader must tick at a positive rate and cannot render at a negative one!");
+
+    nsPerTick = Math.round(1000000000 / tickPerSec);
+    pacer = new FramePacer(framesPerSec);
     control = c;
+    control.pacer = pacer;
 
     control.initialize();
+    Telemetry.register();
 
     addKeyListener(control);
     addMouseListener(control);
@@ -62,7 +117,7 @@ public class Loader extends Canvas implements Runnable
     setFocusable(true);
     setFocusTraversalKeysEnabled(false);
 
-    JFrame frame = new JFrame(title);
+    frame = new JFrame(title);
 
     // The buffer of (6, 40) is due to the way
     // the screen is drawn on the window.
@@ -82,26 +137,28 @@ public class Loader extends Canvas implements Runnable
   }
 
   /**
-   * Executes run() on a new Thread and enables the continual iteration of the
-   * tick/render loop.
+   * Executes simulate() and run() on two new Threads and enables the continual
+   * iteration of the tick and render loops.
    */
   public synchronized void start()
   {
-    thread = new Thread(this);
-    thread.start();
     running = true;
+    simulation = new Thread(this::simulate, "Simulation");
+    thread = new Thread(this, "Render");
+    simulation.start();
+    thread.start();
   }
 
   /**
-   * Terminates the current Thread and prevents any further iterations of the
-   * tick/render loop.
+   * Prevents any further iterations of the tick and render loops and waits for
+   * the simulation Thread to terminate.
    */
   public synchronized void stop()
   {
     try
     {
-      thread.join();
       running = false;
+      simulation.join();
     }
     catch (Exception e)
     {
@@ -110,49 +167,66 @@ public class Loader extends Canvas implements Runnable
   }
 
   /**
-   * Automatically executes on "thread".
+   * Automatically executes on "simulation". Calls control.tick once every
+   * nsPerTick nanoseconds.
    *
-   * ticks:
-   * the number of ticks that must be called before the program proceeds.
+   * next:
+   * the time at which the next tick is due.
+   */
+  private void simulate()
+  {
+    long next = System.nanoTime();
+
+    while (running)
+    {
+      control.tick(frameRate);
+      next += nsPerTick;
+
+      // Skips the ticks that are too late to be worth catching up on.
+      long now = System.nanoTime();
+      if (now - next > MAX_LAG * nsPerTick)
+        next = now;
+
+      for (long wait = next - now; wait > 0; wait = next - System.nanoTime())
+        LockSupport.parkNanos(wait);
+    }
+  }
+
+  /**
+   * Automatically executes on "thread".
    *
-   * frames:
-   * The number of times that the program has rendered in this iteration.
+   * idle:
+   * Whether nothing was rendered in the last iteration. The first idle
+   * iteration still renders, so that the screen shows why it is idle.
    */
   public void run()
   {
-    double ticks = 0;
-    int frames = 0;
-
-    long lastNano = System.nanoTime();
-    long lastMill = System.currentTimeMillis();
+    boolean idle = false;
 
     while (running)
     {
-      long nowNano = System.nanoTime();
-      double ticksElapsed = (nowNano - lastNano) / nsPerTick;
-      lastNano = nowNano;
-      ticks += ticksElapsed;
+      if (control.idle() || !frame.isFocused())
+      {
+        if (idle)
+        {
+          LockSupport.parkNanos(IDLE);
+          continue;
+        }
 
-      while (ticks >= 1)
+        idle = true;
+      }
+      else if (idle)
       {
-        control.tick(frameRate);
-        ticks--;
+        idle = false;
+        pacer.reset();
       }
 
       render();
-      frames++;
-
-      // Restarts the frame count and updates the framerate every second.
-      long nowMill = System.currentTimeMillis();
-      if (nowMill - lastMill >= 1000)
-      {
-        lastMill += 1000;
-        frameRate = frames;
-        frames = 0;
-      }
+      pacer.await();
+      frameRate = pacer.getFrameRate();
     }
 
-    // Allows "running = false" to immediately terminate this thread.
+    // Waits for the simulation to stop as well.
     stop();
   }
 
@@ -174,11 +248,19 @@ public class Loader extends Canvas implements Runnable
       return;
     }
 
+    FrameEvent event = Telemetry.beginFrame();
+    long start = System.nanoTime();
     Graphics g = bs.getDrawGraphics();
 
     control.render(g, frameRate);
 
+    long present = Profiler.start();
     g.dispose();
     bs.show();
+    Profiler.stop(Profiler.PRESENT, present);
+
+    long time = System.nanoTime() - start;
+    Profiler.record(Profiler.FRAME, time);
+    Telemetry.endFrame(event, time);
   }
 }
@@ -0,0 +1,137 @@
+import java.util.Arrays;
+
+/**
+ * An indexed triangle mesh. Vertices are stored once in xyz, three doubles per
+ * vertex, and every triangle refers to its three vertices through index, so a
+ * vertex shared by several triangles is only stored and transformed once.
+ *
+ * The color and flags of triangle t are rgb[t] and flags[t], using the flags of
+ * TriangleBuffer. Its unit face normal is found once, when it is added, so
+ * that Lighting never has to find it again. A Mesh is only added to while it
+ * is being built; afterwards it may be shared by several Models.
+ *
+ * @author Justin C
+ */
+public class Mesh
+{
+  /**
+   * The coordinates of every vertex.
+   */
+  public double[] xyz = new double[48];
+
+  /**
+   * The three vertex indices of every triangle.
+   */
+  public int[] index = new int[48];
+
+  /**
+   * The ARGB color of every triangle.
+   */
+  public int[] rgb = new int[16];
+
+  /**
+   * The flags of every triangle.
+   */
+  public int[] flags = new int[16];
+
+  /**
+   * The unit normal of every triangle, three doubles per triangle, or zero
+   * for a triangle with no area.
+   */
+  public double[] normal = new double[48];
+
+  /**
+   * The number of vertices and triangles in this Mesh.
+   */
+  private int vertexCount, triangleCount;
+
+  /**
+   * Returns the number of vertices in this Mesh.
+   */
+  public int vertexCount()
+  {
+    return vertexCount;
+  }
+
+  /**
+   * Returns the number of triangles in this Mesh.
+   */
+  public int triangleCount()
+  {
+    return triangleCount;
+  }
+
+  /**
+   * Appends the vertex (x, y, z) and returns its index.
+   */
+  public int addVertex(double x, double y, double z)
+  {
+    if (3 * vertexCount + 3 > xyz.length)
+      xyz = Arrays.copyOf(xyz, 2 * xyz.length);
+
+    int o = 3 * vertexCount;
+    xyz[o] = x;
+    xyz[o + 1] = y;
+    xyz[o + 2] = z;
+
+    return vertexCount++;
+  }
+
+  /**
+   * Appends the triangle formed by the vertices with indices (i1, i2, i3), with
+   * color c and flags f, and returns its index. The vertices must already have
+   * been added.
+   */
+  public int addTriangle(int i1, int i2, int i3, int c, int f)
+  {
+    if (triangleCount == rgb.length)
+    {
+      index = Arrays.copyOf(index, 6 * triangleCount);
+      rgb = Arrays.copyOf(rgb, 2 * triangleCount);
+      flags = Arrays.copyOf(flags, 2 * triangleCount);
+      normal = Arrays.copyOf(normal, 6 * triangleCount);
+    }
+
+    int o = 3 * triangleCount;
+    index[o] = i1;
+    index[o + 1] = i2;
+    index[o + 2] = i3;
+    rgb[triangleCount] = c;
+    flags[triangleCount] = f;
+
+    // The cross product of two edges.
+    int a = 3 * i1, b = 3 * i2, d = 3 * i3;
+    double e1x = xyz[b] - xyz[a], e1y = xyz[b + 1] - xyz[a + 1];
+    double e1z = xyz[b + 2] - xyz[a + 2];
+    double e2x = xyz[d] - xyz[a], e2y = xyz[d + 1] - xyz[a + 1];
+    double e2z = xyz[d + 2] - xyz[a + 2];
+    double nx = e1y * e2z - e1z * e2y;
+    double ny = e1z * e2x - e1x * e2z;
+    double nz = e1x * e2y - e1y * e2x;
+
+    double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+    double k = length == 0 ? 0 : 1 / length;
+    normal[o] = nx * k;
+    normal[o + 1] = ny * k;
+    normal[o + 2] = nz * k;
+
+    return triangleCount++;
+  }
+
+  /**
+   * Stores vertex i in out and returns out.
+   */
+  public Vec3 getVertex(int i, Vec3 out)
+  {
+    return out.set(xyz[3 * i], xyz[3 * i + 1], xyz[3 * i + 2]);
+  }
+
+  /**
+   * String representation.
+   */
+  public String toString()
+  {
+    return "***MESH***\nVertices: " + vertexCount +
+    "\nTriangles: " + triangleCount + "\n";
+  }
+}
@@ -4,6 +4,20 @@ import java.util.ArrayList;
  * A configuration of triangles that can be rendered. All triangles are fixed in
  * relation to each other, but the net model can be rotated and displaced.
  *
+ * A model remembers the origin, rotations, tris and mesh that it was last
+ * rendered with. Once they stay the same for a frame, its triangles are
+ * oriented once into a cached world-space Mesh, which is reused until any of
+ * them change. Subclasses may keep assigning the public fields directly, but
+ * must call invalidate() after changing the contents of tris in place.
+ *
+ * A model also keeps a local bounding box and sphere of its vertices, so that
+ * a model outside the camera's view frustum is skipped before any of its
+ * triangles are transformed, and a model wholly inside the frustum is never
+ * clipped.
+ *
+ * A model belongs to the simulation thread, which ticks it and adds it to the
+ * Scene that the render thread draws. The render thread never touches it.
+ *
  * @author Justin C
  */
 public abstract class Model
@@ -18,6 +32,12 @@ public abstract class Model
    */
   public ArrayList<Triangle> tris = new ArrayList<Triangle>();
 
+  /**
+   * An indexed mesh that is rendered along with tris, or null. A mesh is never
+   * modified once it is assigned, so copies of this model share it.
+   */
+  public Mesh mesh;
+
   /**
    * A Vec3 representing the displacement of this Model from the global
    * origin.
@@ -34,11 +54,57 @@ public abstract class Model
    */
   public double rX, rY, rZ;
 
+  /**
+   * Which faces of this model are culled: 0 for none, or TriangleBuffer's
+   * CULL_BACK or CULL_FRONT. Culling is only meaningful for models whose
+   * triangles are all wound counterclockwise when seen from outside.
+   */
+  public int culling;
+
   /**
    * The current orientation matrix. Only updated when necessary.
    */
   private Matrix orientMatrix;
 
+  /**
+   * The origin, rotations, tris size, and mesh that this model was last
+   * rendered with. Only meaningful when tracked is true.
+   */
+  private Vec3 lastOrigin;
+  private double lastX, lastY, lastZ, lastRX, lastRY, lastRZ;
+  private int lastTris;
+  private Mesh lastMesh;
+  private boolean tracked;
+
+  /**
+   * The local bounding box of every vertex, and the center and radius of the
+   * local bounding sphere around its center. Only meaningful when bounded is
+   * true and tris and mesh are the same size and mesh as when they were found.
+   */
+  private double minX, minY, minZ, maxX, maxY, maxZ;
+  private final Vec3 boundCenter = new Vec3();
+  private double boundRadius;
+  private int boundTris;
+  private Mesh boundMesh;
+  private boolean bounded;
+
+  /**
+   * Every triangle of this model in global coordinates, or null if the model
+   * has moved since it was last rendered.
+   */
+  private Mesh world;
+
+  /**
+   * Every triangle of this model in local coordinates, or null if tris or
+   * mesh have changed since it was last built.
+   */
+  private Mesh local;
+
+  /**
+   * Scratch vertices used while adding this model to a pipeline.
+   */
+  private final Vec3 t1 = new Vec3(), t2 = new Vec3(), t3 = new Vec3();
+
   /**
    * Constructs an empty Model with the specified origin and binding constants.
    */
@@ -54,11 +120,14 @@ public abstract class Model
   public Model(Model o)
   {
     this(new Vec3(o.origin), o.shadowBound);
+    culling = o.culling;
 
     int len = o.tris.size();
 
     for (int i = 0; i < len; i++)
       tris.add(new Triangle(o.tris.get(i)));
+
+    mesh = o.mesh;
   }
 
   /**
@@ -70,12 +139,284 @@ public abstract class Model
     Matrix.rotate(0, 1, 0, rY).times(Matrix.rotate(0, 0, 1, rZ)));
   }
 
+  /**
+   * Winds every triangle of tris counterclockwise when seen from outside, by
+   * swapping two vertices of every triangle that faces the local origin. Only
+   * meaningful for models whose triangles surround the local origin.
+   */
+  public void windOutward()
+  {
+    for (Triangle t : tris)
+    {
+      Vec3 normal = t.v2.sub(t.v1).cross(t.v3.sub(t.v1));
+      Vec3 center = t.v1.add(t.v2).add(t.v3);
+
+      if (normal.x * center.x + normal.y * center.y + normal.z * center.z < 0)
+      {
+        Vec3 v = t.v2;
+        t.v2 = t.v3;
+        t.v3 = v;
+      }
+    }
+
+    invalidate();
+  }
+
+  /**
+   * Returns whether the origin, rotations, tris, or mesh of this model have
+   * changed since it was last rendered, and remembers their current values.
+   */
+  private boolean moved()
+  {
+    boolean moved = !tracked || origin != lastOrigin ||
+        origin.x != lastX || origin.y != lastY || origin.z != lastZ ||
+        rX != lastRX || rY != lastRY || rZ != lastRZ ||
+        tris.size() != lastTris || mesh != lastMesh;
+
+    lastOrigin = origin;
+    lastX = origin.x;
+    lastY = origin.y;
+    lastZ = origin.z;
+    lastRX = rX;
+    lastRY = rY;
+    lastRZ = rZ;
+    lastTris = tris.size();
+    lastMesh = mesh;
+    tracked = true;
+
+    return moved;
+  }
+
+  /**
+   * Discards the cached world-space triangles. Must be called after changing
+   * the contents of tris in place.
+   */
+  public void invalidate()
+  {
+    tracked = false;
+    bounded = false;
+    world = null;
+  }
+
+  /**
+   * Finds the local bounding box and bounding sphere of this model if tris or
+   * mesh have changed since they were last found.
+   */
+  private void updateBounds()
+  {
+    if (bounded && tris.size() == boundTris && mesh == boundMesh)
+      return;
+
+    local = null;
+    minX = minY = minZ = Double.POSITIVE_INFINITY;
+    maxX = maxY = maxZ = Double.NEGATIVE_INFINITY;
+
+    for (Triangle t : tris)
+    {
+      extend(t.v1.x, t.v1.y, t.v1.z);
+      extend(t.v2.x, t.v2.y, t.v2.z);
+      extend(t.v3.x, t.v3.y, t.v3.z);
+    }
+
+    double[] xyz = mesh == null ? null : mesh.xyz;
+    int vLen = mesh == null ? 0 : mesh.vertexCount();
+
+    for (int i = 0; i < vLen; i++)
+      extend(xyz[3 * i], xyz[3 * i + 1], xyz[3 * i + 2]);
+
+    boundCenter.set(
+        (minX + maxX) / 2, (minY + maxY) / 2, (minZ + maxZ) / 2);
+
+    // The sphere only has to reach the farthest vertex, which is usually
+    // closer than the corners of the box.
+    double r2 = 0;
+
+    for (Triangle t : tris)
+    {
+      r2 = Math.max(r2, distanceSquared(t.v1.x, t.v1.y, t.v1.z));
+      r2 = Math.max(r2, distanceSquared(t.v2.x, t.v2.y, t.v2.z));
+      r2 = Math.max(r2, distanceSquared(t.v3.x, t.v3.y, t.v3.z));
+    }
+
+    for (int i = 0; i < vLen; i++)
+      r2 = Math.max(r2,
+          distanceSquared(xyz[3 * i], xyz[3 * i + 1], xyz[3 * i + 2]));
+
+    boundRadius = Math.sqrt(r2);
+    boundTris = tris.size();
+    boundMesh = mesh;
+    bounded = true;
+  }
+
+  /**
+   * Grows the local bounding box to contain (x, y, z).
+   */
+  private void extend(double x, double y, double z)
+  {
+    minX = Math.min(minX, x);
+    minY = Math.min(minY, y);
+    minZ = Math.min(minZ, z);
+    maxX = Math.max(maxX, x);
+    maxY = Math.max(maxY, y);
+    maxZ = Math.max(maxZ, z);
+  }
+
+  /**
+   * Returns the squared distance from the local point (x, y, z) to the center
+   * of the bounding sphere.
+   */
+  private double distanceSquared(double x, double y, double z)
+  {
+    double dx = x - boundCenter.x;
+    double dy = y - boundCenter.y;
+    double dz = z - boundCenter.z;
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+  /**
+   * Returns the local bounding box of this model as its minimum and maximum
+   * corners.
+   */
+  public Vec3[] getBounds()
+  {
+    updateBounds();
+    return new Vec3[] {
+        new Vec3(minX, minY, minZ), new Vec3(maxX, maxY, maxZ) };
+  }
+
+  /**
+   * Returns the radius of the local bounding sphere of this model.
+   */
+  public double getBoundRadius()
+  {
+    updateBounds();
+    return boundRadius;
+  }
+
+  /**
+   * Returns the local center of the bounding sphere of this model.
+   */
+  public Vec3 getBoundCenter()
+  {
+    updateBounds();
+    return new Vec3(boundCenter);
+  }
+
+  /**
+   * Returns the 4x4 homogeneous matrix that orients a local vertex of this
+   * model in the global coordinate system at its current origin and
+   * rotations. The matrix is new, so it may be kept as a snapshot.
+   */
+  public Matrix getTransform()
+  {
+    updateOrientMatrix();
+    return homogeneousL_G();
+  }
+
+  /**
+   * Returns every triangle of this model in local coordinates as a Mesh, or
+   * null if it has none. The Mesh is never modified, and is cached until tris
+   * or mesh change, so it may be shared by snapshots of this model.
+   */
+  public Mesh getLocalMesh()
+  {
+    updateBounds();
+    if (local == null)
+      local = tris.isEmpty() ? mesh : toMesh(false);
+    return local;
+  }
+
+  /**
+   * Returns every triangle of this model in global coordinates as a Mesh.
+   * Requires an up-to-date orientMatrix.
+   */
+  private Mesh toWorld()
+  {
+    return toMesh(true);
+  }
+
+  /**
+   * Returns every triangle of this model as a Mesh, in global coordinates if
+   * global, or else in local coordinates. A global Mesh requires an
+   * up-to-date orientMatrix.
+   */
+  private Mesh toMesh(boolean global)
+  {
+    Mesh r = new Mesh();
+
+    for (Triangle t : tris)
+    {
+      t1.set(t.v1);
+      t2.set(t.v2);
+      t3.set(t.v3);
+      if (global)
+      {
+        orient(t1, t1);
+        orient(t2, t2);
+        orient(t3, t3);
+      }
+
+      r.addTriangle(
+          r.addVertex(t1.x, t1.y, t1.z),
+          r.addVertex(t2.x, t2.y, t2.z),
+          r.addVertex(t3.x, t3.y, t3.z),
+          t.rgb, t.shadows ? TriangleBuffer.SHADOWS : 0);
+    }
+
+    if (mesh == null)
+      return r;
+
+    int offset = r.vertexCount();
+    for (int i = 0; i < mesh.vertexCount(); i++)
+    {
+      mesh.getVertex(i, t1);
+      if (global)
+        orient(t1, t1);
+      r.addVertex(t1.x, t1.y, t1.z);
+    }
+
+    int[] index = mesh.index;
+    for (int i = 0; i < mesh.triangleCount(); i++)
+      r.addTriangle(offset + index[3 * i], offset + index[3 * i + 1],
+          offset + index[3 * i + 2], mesh.rgb[i], mesh.flags[i]);
+
+    return r;
+  }
+
+  /**
+   * Returns the 4x4 homogeneous matrix that orients a local vertex in the
+   * global coordinate system. Requires an up-to-date orientMatrix.
+   */
+  private Matrix homogeneousL_G()
+  {
+    Matrix r = new Matrix(4);
+
+    for (int i = 0; i < 3; i++)
+      for (int j = 0; j < 3; j++)
+        r.v[i][j] = orientMatrix.v[i][j];
+
+    r.v[0][3] = origin.x;
+    r.v[1][3] = origin.y;
+    r.v[2][3] = origin.z;
+
+    return r;
+  }
+
   /**
    * Orients a local vertex in the global coordinate system.
    */
   private Vec3 orient(Vec3 r)
   {
-    return r.itimes(orientMatrix).add(origin);
+    return orient(r, new Vec3());
+  }
+
+  /**
+   * Stores the global orientation of the local vertex r in out and returns
+   * out. out may be the same Vec3 as r.
+   */
+  private Vec3 orient(Vec3 r, Vec3 out)
+  {
+    return r.itimesInto(orientMatrix, out).addInto(origin, out);
   }
 
   /**
@@ -84,7 +425,7 @@ public abstract class Model
   private Triangle orient(Triangle r)
   {
     return new Triangle(
-        orient(r.v1), orient(r.v2), orient(r.v3), r.color, r.shadows);
+        orient(r.v1), orient(r.v2), orient(r.v3), r.rgb, r.shadows);
   }
 
   /**
@@ -95,21 +436,57 @@ public abstract class Model
     o.updateOrientMatrix();
     for (int i = 0; i < o.tris.size(); i++)
       tris.add(o.orient(o.tris.get(i)));
+
+    if (o.mesh == null)
+      return;
+
+    int[] index = o.mesh.index;
+    for (int i = 0; i < o.mesh.triangleCount(); i++)
+      tris.add(new Triangle(
+          o.orient(o.mesh.getVertex(index[3 * i], new Vec3())),
+          o.orient(o.mesh.getVertex(index[3 * i + 1], new Vec3())),
+          o.orient(o.mesh.getVertex(index[3 * i + 2], new Vec3())),
+          o.mesh.rgb[i],
+          (o.mesh.flags[i] & TriangleBuffer.SHADOWS) != 0));
   }
 
   /**
-   * Adds this oriented model to a rendering pipeline.
+   * Adds this model to a Scene. A model that has moved since the last frame
+   * is added as its shared local Mesh and a new matrix that orients it, so
+   * nothing proportional to its triangles is built; a model that has not
+   * moved is added as its cached world-space Mesh. Neither is ever modified,
+   * so the Scene may be read on another thread while this model keeps
+   * ticking.
    */
-  public void addTo(ArrayList<Triangle> pipeline, boolean shadows)
+  public void addTo(Scene scene)
   {
-    updateOrientMatrix();
+    if (tris.isEmpty() && mesh == null)
+      return;
 
-    if (shadowBound)
-      for (int i = 0; i < tris.size(); i++)
-        tris.get(i).shadows = shadows;
+    boolean still = !moved() && orientMatrix != null;
+    if (!still)
+    {
+      world = null;
+      updateOrientMatrix();
+    }
 
-    for (Triangle t : tris)
-      pipeline.add(orient(t));
+    updateBounds();
+
+    if (still)
+    {
+      if (world == null)
+        world = toWorld();
+
+      scene.add(world, orient(boundCenter, t1), boundRadius, culling,
+          shadowBound);
+      return;
+    }
+
+    // Builds the local Mesh before orienting the center, since building it
+    // uses t1 as well.
+    Mesh m = getLocalMesh();
+    scene.add(m, homogeneousL_G(), orient(boundCenter, t1), boundRadius,
+        culling, shadowBound, 1, -1);
   }
 
   /**
@@ -122,7 +499,8 @@ public abstract class Model
   }
 
   /**
-   * Updates this model. Can be used for movement.
+   * Updates this model. Can be used for movement. Called on the simulation
+   * thread only.
    */
   public abstract void tick();
 }
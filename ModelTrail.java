@@ -1,14 +1,41 @@
-import java.awt.Color;
-
 /**
- * A Model whose colors' RGB value linearly fades over time towards black. The
- * transparency of each color linearly fades over time from a specified starting
- * point alpha_0, given by the AnimatedModel this ModelTrail is based on.
+ * A fading snapshot of an AnimatedModel, drawn where the model was some ticks
+ * ago. The RGB value of its colors linearly fades over time towards black,
+ * and their transparency linearly fades over time from a starting point
+ * alpha_0, given by the AnimatedModel this ModelTrail is based on.
+ *
+ * A trail does not copy the triangles of its model. It keeps the local Mesh
+ * that the model shares with all of its trails, the matrix that oriented the
+ * model when the trail was made, and its age. The fade is only applied to
+ * the colors of its triangles as they are added to a pipeline, so a trail
+ * takes the same small memory however many triangles its model has.
  *
  * @author Justin Chang
  */
-public class ModelTrail extends Model
+public class ModelTrail
 {
+  /**
+   * The local triangles of the model, or null if it had none.
+   */
+  private final Mesh mesh;
+
+  /**
+   * The local-to-global matrix of the model when this trail was made.
+   */
+  private final Matrix transform;
+
+  /**
+   * The global center and radius of the model's bounding sphere.
+   */
+  private final Vec3 center;
+  private final double radius;
+
+  /**
+   * The faces culled by, and whether shadows are bound to, the model.
+   */
+  private final int culling;
+  private final boolean shadowBound;
+
   /**
    * The current remaining life span of the trail in ticks.
    */
@@ -25,19 +52,27 @@ public class ModelTrail extends Model
   private final int startingAlpha;
 
   /**
-   * Creates a ModelTrail for an AnimatedModel.
+   * Creates a ModelTrail for an AnimatedModel at its current origin and
+   * rotations.
    */
   public ModelTrail(AnimatedModel am)
   {
-    super(am);
+    mesh = am.getLocalMesh();
+    // Orients the model once, and takes the center through the same matrix.
+    transform = am.getTransform();
+    Vec3 c = am.getBoundCenter();
+    double[][] m = transform.v;
+    center = new Vec3(
+        m[0][0] * c.x + m[0][1] * c.y + m[0][2] * c.z + m[0][3],
+        m[1][0] * c.x + m[1][1] * c.y + m[1][2] * c.z + m[1][3],
+        m[2][0] * c.x + m[2][1] * c.y + m[2][2] * c.z + m[2][3]);
+    radius = am.getBoundRadius();
+    culling = am.culling;
+    shadowBound = am.shadowBound;
+
     startingAlpha = am.alpha_0;
     originalLifeSpan = am.lifeSpan;
     currentLifeSpan = originalLifeSpan;
-
-    // Aligns to given rotation values.
-    rX = am.rX;
-    rY = am.rY;
-    rZ = am.rZ;
   }
 
   /**
@@ -45,24 +80,6 @@ public class ModelTrail extends Model
    */
   public void tick()
   {
-    if (currentLifeSpan > 0)
-      for (int i = 0; i < tris.size(); i++)
-      {
-        int r = tris.get(i).color.getRed();
-        int g = tris.get(i).color.getGreen();
-        int b = tris.get(i).color.getBlue();
-
-        // Linearly fading factors, albeit arbitrary.
-        double shade = (double) currentLifeSpan / (currentLifeSpan + 1);
-        double fade = (double) currentLifeSpan / originalLifeSpan;
-
-        tris.get(i).color = new Color(
-            (int) (r * shade),
-            (int) (g * shade),
-            (int) (b * shade),
-            (int) (startingAlpha * fade));
-      }
-
     currentLifeSpan--;
   }
 
@@ -73,4 +90,44 @@ public class ModelTrail extends Model
   {
     return currentLifeSpan <= 0;
   }
+
+  /**
+   * Returns the factor by which the RGB value of every color is multiplied.
+   * Every tick multiplied it by the life span before that tick over one more,
+   * so the factors telescope.
+   */
+  private double shade()
+  {
+    return (currentLifeSpan + 1.0) / (originalLifeSpan + 1);
+  }
+
+  /**
+   * Returns the transparency of every color, out of 255.
+   */
+  private int alpha()
+  {
+    return (int) (startingAlpha * (currentLifeSpan + 1.0) / originalLifeSpan);
+  }
+
+  /**
+   * Adds this trail to a Scene. The Scene only refers to the Mesh and matrix
+   * of this trail, which are never modified.
+   */
+  public void addTo(Scene scene)
+  {
+    if (mesh == null || hidden())
+      return;
+
+    scene.add(mesh, transform, center, radius, culling, shadowBound,
+        shade(), alpha());
+  }
+
+  /**
+   * String representation.
+   */
+  public String toString()
+  {
+    return "***MODELTRAIL***\nCenter: " + center + "\nLife span: " +
+    currentLifeSpan + " / " + originalLifeSpan + "\n";
+  }
 }
@@ -61,9 +61,9 @@ public class Movement
     // Constant used to minimize calculations.
     double h_n = h + Math.PI / 2;
 
-    double newX = pos.v[0][0] + (netX * Math.cos(h) + netY * Math.cos(h_n)) * vel;
-    double newY = pos.v[1][0] + (netX * Math.sin(h) + netY * Math.sin(h_n)) * vel;
-    double newZ = pos.v[2][0] + netZ * vel;
+    double newX = pos.x + (netX * Math.cos(h) + netY * Math.cos(h_n)) * vel;
+    double newY = pos.y + (netX * Math.sin(h) + netY * Math.sin(h_n)) * vel;
+    double newZ = pos.z + netZ * vel;
 
     // The intended destination of the player.
     Vec3 end = new Vec3(newX, newY, newZ);
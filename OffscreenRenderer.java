@@ -0,0 +1,121 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+
+/**
+ * Renders Scenes to memory instead of to a window, so that frames can be
+ * produced without a display, for instance under -Djava.awt.headless=true.
+ * Nothing here touches the static state of Central, Movement, or Rotation: the
+ * models to draw, the camera, and the resolution are all given explicitly.
+ *
+ * An OffscreenRenderer keeps its FrameBuffer, pipeline, and TileRenderer
+ * across frames, so rendering many frames of the same resolution allocates
+ * nothing but their results. It is used by one thread at a time.
+ *
+ * @author Justin C
+ */
+public class OffscreenRenderer
+{
+  /**
+   * The render target of the last frame, or null before the first one.
+   */
+  private FrameBuffer frame;
+
+  /**
+   * The list of all triangles to be rendered, refilled every frame.
+   */
+  private final TriangleBuffer pipeline = new TriangleBuffer();
+
+  /**
+   * Renders the tiles of every frame.
+   */
+  private final TileRenderer tiles;
+
+  /**
+   * Constructs an OffscreenRenderer that renders its tiles with tr.
+   */
+  public OffscreenRenderer(TileRenderer tr)
+  {
+    tiles = tr;
+  }
+
+  /**
+   * Constructs an OffscreenRenderer with its own TileRenderer of the default
+   * tile size and thread count.
+   */
+  public OffscreenRenderer()
+  {
+    this(new TileRenderer(Triangle.TILE_SIZE, Triangle.THREADS));
+  }
+
+  /**
+   * Renders scene as seen by cam, at the resolution of cam, and returns the
+   * FrameBuffer that it was drawn on. Pixels that nothing was drawn on are
+   * transparent. The FrameBuffer is reused by the next frame.
+   */
+  public FrameBuffer render(Scene scene, Camera cam)
+  {
+    pipeline.clear();
+    scene.addTo(pipeline, cam);
+
+    frame = FrameBuffer.reuse(frame, cam.width, cam.height, true);
+    return Triangle.getImage(pipeline, cam, frame, tiles);
+  }
+
+  /**
+   * Renders scene as seen by its own camera.
+   */
+  public FrameBuffer render(Scene scene)
+  {
+    if (scene.camera == null)
+      throw new IllegalArgumentException("The Scene has no camera!");
+
+    return render(scene, scene.camera);
+  }
+
+  /**
+   * Renders scene as seen by cam and returns a copy of its ARGB pixels,
+   * indexed by y * cam.width + x.
+   */
+  public int[] renderARGB(Scene scene, Camera cam)
+  {
+    int[] rgb = render(scene, cam).rgb;
+    return Arrays.copyOf(rgb, rgb.length);
+  }
+
+  /**
+   * Renders scene as seen by cam and writes it to file as a PNG.
+   */
+  public void writePNG(Scene scene, Camera cam, File file) throws IOException
+  {
+    if (!ImageIO.write(render(scene, cam).getImage(), "png", file))
+      throw new IOException("There is no PNG writer!");
+  }
+
+  /**
+   * Returns the TileRenderer of this OffscreenRenderer, whose culled and
+   * clipped counts describe the last frame.
+   */
+  public TileRenderer getTiles()
+  {
+    return tiles;
+  }
+
+  /**
+   * Stops the threads of the TileRenderer.
+   */
+  public void shutdown()
+  {
+    tiles.shutdown();
+  }
+
+  /**
+   * String representation.
+   */
+  public String toString()
+  {
+    return "***OFFSCREENRENDERER***\nFrame: " +
+    (frame == null ? "none" : frame.width + " x " + frame.height) + "\n";
+  }
+}
@@ -43,7 +43,7 @@ public class Pinwheel extends AnimatedModel
 
       tris.add(new Triangle(
           new double[] { cos1, sin1, 0, cos2, sin2, 0, cos3, sin3, height },
-          colors[i % colors.length]));
+          colors[i % colors.length].getRGB()));
     }
   }
 
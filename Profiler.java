@@ -0,0 +1,184 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * A set of static stage timers that measure where the time of every tick and
+ * frame goes. Every stage keeps its last WINDOW times in nanoseconds, from
+ * which rolling percentiles are found.
+ *
+ * The timers are enabled by -Dvec3d.profile=true or by setting enabled. While
+ * they are disabled, start() and stop() only read enabled, so timing a stage
+ * costs close to nothing. Every recorded stage is also passed on to
+ * Telemetry, so stages are timed while a flight recording records them too.
+ *
+ * Every stage must only be recorded by one thread, such as the simulation
+ * thread for TICK and the render thread for FRAME. Percentiles may be read on
+ * any thread, and are then only approximate.
+ *
+ * @author Justin C
+ */
+public class Profiler
+{
+  /**
+   * The stages: a whole tick, building its Scene, building the pipeline from
+   * the Scene, clipping and projecting, rasterizing, drawing the image and
+   * HUD, showing the buffer, and a whole frame.
+   */
+  public static final int TICK = 0, SCENE = 1, PIPELINE = 2, TRANSFORM = 3,
+      RASTER = 4, BLIT = 5, PRESENT = 6, FRAME = 7;
+
+  /**
+   * The name of every stage.
+   */
+  public static final String[] NAMES = { "Tick", "Scene", "Pipeline",
+      "Transform", "Raster", "Blit", "Present", "Frame" };
+
+  /**
+   * The number of most recent times that every stage keeps.
+   */
+  public static final int WINDOW = 256;
+
+  /**
+   * Whether the stage timers are recording.
+   */
+  public static volatile boolean enabled = Boolean.getBoolean("vec3d.profile");
+
+  /**
+   * The last WINDOW times of every stage, and the number of times that every
+   * stage has been recorded.
+   */
+  private static final long[][] samples = new long[NAMES.length][WINDOW];
+  private static final long[] counts = new long[NAMES.length];
+
+  /**
+   * Don't let anyone instantiate this class.
+   */
+  private Profiler()
+  {
+
+  }
+
+  /**
+   * Returns the time at which a stage starts, or 0 if neither the timers nor
+   * a flight recording of stages are enabled.
+   */
+  public static long start()
+  {
+    return enabled || Telemetry.stagesEnabled() ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Records the time since start, as returned by start(), for stage.
+   */
+  public static void stop(int stage, long start)
+  {
+    if (start != 0)
+      record(stage, System.nanoTime() - start);
+  }
+
+  /**
+   * Records a time of nanos nanoseconds for stage.
+   */
+  public static void record(int stage, long nanos)
+  {
+    Telemetry.stage(stage, nanos);
+
+    if (!enabled)
+      return;
+
+    long n = counts[stage];
+    samples[stage][(int) (n % WINDOW)] = nanos;
+    counts[stage] = n + 1;
+  }
+
+  /**
+   * Forgets every recorded time.
+   */
+  public static void reset()
+  {
+    Arrays.fill(counts, 0);
+  }
+
+  /**
+   * Returns the recorded times of stage in the window, in ascending order.
+   */
+  private static long[] sorted(int stage)
+  {
+    int n = (int) Math.min(counts[stage], WINDOW);
+    long[] r = Arrays.copyOf(samples[stage], n);
+    Arrays.sort(r);
+    return r;
+  }
+
+  /**
+   * Returns the p-th percentile, for p in [0, 100], of the ascending times t,
+   * or 0 if there are none.
+   */
+  private static long percentile(long[] t, double p)
+  {
+    if (t.length == 0)
+      return 0;
+
+    int i = (int) Math.ceil(p / 100 * t.length) - 1;
+    return t[Math.max(0, Math.min(t.length - 1, i))];
+  }
+
+  /**
+   * Returns the p-th percentile of the times of stage in the window, in
+   * nanoseconds.
+   */
+  public static long percentile(int stage, double p)
+  {
+    return percentile(sorted(stage), p);
+  }
+
+  /**
+   * Returns a line of the 50th, 95th, and 99th percentiles of every stage in
+   * milliseconds, for the HUD.
+   */
+  public static String[] summary()
+  {
+    String[] r = new String[NAMES.length + 1];
+    r[0] = "Stage: p50 / p95 / p99 ms";
+
+    for (int s = 0; s < NAMES.length; s++)
+    {
+      long[] t = sorted(s);
+      r[s + 1] = NAMES[s] + ": " + Matrix.round(percentile(t, 50) / 1e6, 3) +
+          " / " + Matrix.round(percentile(t, 95) / 1e6, 3) + " / " +
+          Matrix.round(percentile(t, 99) / 1e6, 3);
+    }
+
+    return r;
+  }
+
+  /**
+   * Writes the count, mean, 50th, 95th, and 99th percentiles, and maximum of
+   * every stage in the window to file as CSV, in nanoseconds.
+   */
+  public static void writeCSV(File file) throws IOException
+  {
+    try (PrintWriter out = new PrintWriter(file))
+    {
+      out.println("stage,count,mean_ns,p50_ns,p95_ns,p99_ns,max_ns");
+
+      for (int s = 0; s < NAMES.length; s++)
+      {
+        long[] t = sorted(s);
+        long sum = 0;
+        for (long x : t)
+          sum += x;
+
+        out.println(NAMES[s] + "," + t.length + "," +
+            (t.length == 0 ? 0 : sum / t.length) + "," +
+            percentile(t, 50) + "," + percentile(t, 95) + "," +
+            percentile(t, 99) + "," + percentile(t, 100));
+      }
+
+      if (out.checkError())
+        throw new IOException("The timers could not be written to " + file + "!");
+    }
+  }
+}
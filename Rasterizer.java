@@ -0,0 +1,125 @@
+/**
+ * Fills runs of consecutive pixels of a FrameBuffer that a triangle may cover.
+ * Triangle_NDC.render finds the runs and their edge functions and depths, and
+ * the Rasterizer tests, depth-tests and writes their pixels.
+ *
+ * This class fills one pixel at a time. A subclass may fill several at once;
+ * the backend is chosen once, at startup, by the system property
+ * vec3d.rasterizer ("scalar", the default, or "vector"). Every backend must
+ * draw exactly the same pixels with exactly the same colors and depths.
+ *
+ * The vector backend is VectorRasterizer in simd/, built on the incubating
+ * jdk.incubator.vector module. It is compiled separately, so that the rest of
+ * the project builds without the module; if it is missing, the scalar
+ * backend is used instead.
+ *
+ * @author Justin C
+ */
+public class Rasterizer
+{
+  /**
+   * The backend that every triangle is rasterized with.
+   */
+  public static final Rasterizer ACTIVE =
+      forName(System.getProperty("vec3d.rasterizer", "scalar"));
+
+  /**
+   * Returns the backend with the specified name, or the scalar backend if it
+   * cannot be loaded.
+   */
+  public static Rasterizer forName(String name)
+  {
+    if (name.equals("vector"))
+      try
+      {
+        return (Rasterizer) Class.forName("VectorRasterizer")
+            .getDeclaredConstructor().newInstance();
+      }
+      catch (ReflectiveOperationException | LinkageError e)
+      {
+        System.err.println(
+            "The vector rasterizer is unavailable; rasterizing scalars!");
+      }
+    else if (!name.equals("scalar"))
+      throw new IllegalArgumentException(
+          "There is no rasterizer named " + name + "!");
+
+    return new Rasterizer();
+  }
+
+  /**
+   * Fills the n pixels starting at index start of fb with color rgb, and
+   * returns the number of them that were written.
+   *
+   * Pixel k of the run is covered if covered is true, or if the edge
+   * functions e1 + k * e1_s, e2 + k * e2_s, e3 + k * e3_s are all
+   * nonnegative. Its depth inverse is depth_i + k * depth_s, and it is written
+   * if that is nearer than the depth already there.
+   */
+  public int fill(FrameBuffer fb, int start, int n,
+      long e1, long e2, long e3, long e1_s, long e2_s, long e3_s,
+      boolean covered, double depth_i, double depth_s, int rgb)
+  {
+    return fill(fb, start, 0, n, e1, e2, e3, e1_s, e2_s, e3_s,
+        covered, depth_i, depth_s, rgb);
+  }
+
+  /**
+   * Fills pixels k through n - 1 of the run one at a time; otherwise
+   * identical to fill(fb, start, n, ...).
+   */
+  protected static int fill(FrameBuffer fb, int start, int k, int n,
+      long e1, long e2, long e3, long e1_s, long e2_s, long e3_s,
+      boolean covered, double depth_i, double depth_s, int rgb)
+  {
+    int[] img = fb.rgb;
+    double[] zib = fb.zib;
+
+    // The depth stamps of the image, if its depths are cleared lazily.
+    int[] stamp = fb.stamp;
+    int epoch = fb.epoch;
+
+    // An opaque color composites to itself over any background.
+    boolean opaque = rgb >>> 24 == 255;
+    int wrote = 0;
+
+    e1 += k * e1_s;
+    e2 += k * e2_s;
+    e3 += k * e3_s;
+
+    for (int zIndex = start + k; k < n; k++, zIndex++)
+    {
+      // If the triangle covers the pixel ...
+      if (covered || (e1 | e2 | e3) >= 0)
+      {
+        double z = depth_i + k * depth_s;
+        double depth = stamp == null || stamp[zIndex] == epoch ?
+            zib[zIndex] : FrameBuffer.FAR;
+
+        if (depth > z)
+        {
+          // Composites the final color, with transparency, over the image.
+          img[zIndex] = opaque ? rgb : Triangle_NDC.composite(rgb, img[zIndex]);
+          zib[zIndex] = z;
+          if (stamp != null)
+            stamp[zIndex] = epoch;
+          wrote++;
+        }
+      }
+
+      e1 += e1_s;
+      e2 += e2_s;
+      e3 += e3_s;
+    }
+
+    return wrote;
+  }
+
+  /**
+   * String representation.
+   */
+  public String toString()
+  {
+    return "***RASTERIZER***\nBackend: " + getClass().getName() + "\n";
+  }
+}
@@ -51,7 +51,7 @@ public class Rectangle extends Model
           { +d2 / 2, 0, +d1 / 2, +d2 / 2, 0, -d1 / 2, -d2 / 2, 0, +d1 / 2 } };
 
     for (int i = 0; i < coords.length; i++)
-      tris.add(new Triangle(coords[i], color));
+      tris.add(new Triangle(coords[i], color.getRGB()));
   }
 
   /**
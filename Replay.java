@@ -0,0 +1,153 @@
+import java.awt.Canvas;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import javax.swing.JFrame;
+
+/**
+ * Replays a CameraPath through Central and measures how long every frame
+ * takes, so that runs on the same scene and path can be compared with each
+ * other.
+ *
+ * Unlike Loader, the replay ticks and renders in lockstep: every frame is
+ * exactly one tick of the path, however long it takes, so every run renders
+ * exactly the same frames. Frames are rendered offscreen, and also shown in a
+ * window unless headless.
+ *
+ * Usage: java Replay path [frames] [--window]
+ *
+ * where frames defaults to one more than the last tick of the path. The first
+ * replay.warmup frames (120 by default) are rendered but not measured.
+ * Afterwards, the percentiles of the frame times, the throughput, and the
+ * bytes allocated by every thread are printed.
+ *
+ * @author Justin C
+ */
+public class Replay
+{
+  /**
+   * The number of frames rendered before any are measured.
+   */
+  public static final int WARMUP = Integer.getInteger("replay.warmup", 120);
+
+  /**
+   * Don't let anyone instantiate this class.
+   */
+  private Replay()
+  {
+
+  }
+
+  /**
+   * Returns the number of bytes that every live thread has allocated.
+   */
+  private static long allocated()
+  {
+    com.sun.management.ThreadMXBean mx =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    long sum = 0;
+    for (long b : mx.getThreadAllocatedBytes(mx.getAllThreadIds()))
+      sum += Math.max(0, b);
+    return sum;
+  }
+
+  /**
+   * Returns the p-th percentile of the ascending times t in milliseconds.
+   */
+  private static String percentile(long[] t, double p)
+  {
+    int i = (int) Math.ceil(p / 100 * t.length) - 1;
+    return Matrix.round(t[Math.max(0, Math.min(t.length - 1, i))] / 1e6, 3);
+  }
+
+  public static void main(String[] args) throws Exception
+  {
+    if (args.length < 1)
+      throw new IllegalArgumentException(
+          "Usage: java Replay path [frames] [--window]!");
+
+    CameraPath path = CameraPath.read(new File(args[0]));
+    int frames = args.length > 1 && !args[1].startsWith("--") ?
+        Integer.parseInt(args[1]) : (int) path.length() + 1;
+    boolean window = Arrays.asList(args).contains("--window");
+
+    Central c = new Central();
+    c.initialize();
+    c.script = path;
+
+    BufferedImage img = new BufferedImage(Writer.WIDTH, Writer.HEIGHT,
+        BufferedImage.TYPE_INT_ARGB);
+    Graphics g = img.getGraphics();
+
+    // Shows every frame on a plain Canvas, without a BufferStrategy.
+    Canvas canvas = null;
+    if (window)
+    {
+      canvas = new Canvas();
+      canvas.setPreferredSize(new Dimension(Writer.WIDTH, Writer.HEIGHT));
+
+      JFrame frame = new JFrame("Replay of " + args[0]);
+      frame.add(canvas);
+      frame.pack();
+      frame.setResizable(false);
+      frame.setLocationRelativeTo(null);
+      frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+      frame.setVisible(true);
+    }
+
+    long[] times = new long[Math.max(0, frames - WARMUP)];
+    long bytes = 0, start = 0;
+
+    for (int i = 0; i < frames; i++)
+    {
+      if (i == WARMUP)
+      {
+        bytes = allocated();
+        start = System.nanoTime();
+      }
+
+      long t = System.nanoTime();
+
+      c.tick(i);
+      c.render(g, i);
+
+      if (canvas != null)
+      {
+        Graphics cg = canvas.getGraphics();
+        cg.drawImage(img, 0, 0, null);
+        cg.dispose();
+      }
+
+      if (i >= WARMUP)
+        times[i - WARMUP] = System.nanoTime() - t;
+    }
+
+    if (times.length == 0)
+    {
+      System.out.println("No frames measured; there were only " + frames +
+          " and " + WARMUP + " of warmup.");
+      System.exit(0);
+    }
+
+    long elapsed = System.nanoTime() - start;
+    bytes = allocated() - bytes;
+    Arrays.sort(times);
+
+    System.out.println("Replay of " + args[0] + ": " + times.length +
+        " frames measured after " + Math.min(frames, WARMUP) + " of warmup");
+    System.out.println("Frame time p50 / p95 / p99 / max: " +
+        percentile(times, 50) + " / " + percentile(times, 95) + " / " +
+        percentile(times, 99) + " / " + percentile(times, 100) + " ms");
+    System.out.println("Throughput: " +
+        Matrix.round(times.length * 1e9 / elapsed, 3) + " frames/s");
+    System.out.println("Allocated: " + bytes + " B, " +
+        bytes / times.length + " B/frame");
+
+    // The TileRenderer's threads would otherwise keep running.
+    System.exit(0);
+  }
+}
@@ -0,0 +1,188 @@
+import java.util.Arrays;
+
+/**
+ * A snapshot of everything that a frame draws: the camera it is seen through,
+ * whether shadows are enabled, and every model as a world-space Mesh with a
+ * global bounding sphere. A ModelTrail is instead a local Mesh with the matrix
+ * that takes it to global coordinates, and the fade of its colors.
+ *
+ * A Scene is built by the simulation thread at the end of a tick and then
+ * handed to the render thread, which only reads it. The world-space meshes of
+ * a Model are never modified once they are built, so a Scene refers to them
+ * instead of copying them. A Scene is meant to be cleared and refilled by the
+ * simulation thread once the render thread is done with it; its arrays only
+ * grow, so once they are large enough, refilling allocates nothing.
+ *
+ * @author Justin C
+ */
+public class Scene
+{
+  /**
+   * The number of the tick that this Scene was built at. Later ticks have
+   * greater numbers; a Scene that was never built has the number 0.
+   */
+  public long tick;
+
+  /**
+   * The camera of this Scene, or null if it was never built.
+   */
+  public Camera camera;
+
+  /**
+   * Whether shadows are enabled for all shadow-bound models.
+   */
+  public boolean shadows;
+
+  /**
+   * The lights that shade every triangle with shadows.
+   */
+  public Lighting lighting = Lighting.DEFAULT;
+
+  /**
+   * The world-space mesh, global bounding sphere, culled faces, and whether it
+   * is shadow-bound of every model. The mesh of a trail is local instead, and
+   * has its local-to-global matrix in transforms, its shade in shades and its
+   * alpha in alphas; other models have a null matrix.
+   */
+  private Mesh[] meshes = new Mesh[16];
+  private Matrix[] transforms = new Matrix[16];
+  private double[] shades = new double[16];
+  private int[] alphas = new int[16];
+  private Vec3[] centers = new Vec3[16];
+  private double[] radii = new double[16];
+  private int[] culling = new int[16];
+  private boolean[] shadowBound = new boolean[16];
+
+  /**
+   * The number of models in this Scene.
+   */
+  private int size;
+
+  /**
+   * Constructs an empty Scene.
+   */
+  public Scene()
+  {
+    for (int i = 0; i < centers.length; i++)
+      centers[i] = new Vec3();
+  }
+
+  /**
+   * Returns the number of models in this Scene.
+   */
+  public int size()
+  {
+    return size;
+  }
+
+  /**
+   * Removes every model without releasing any memory.
+   */
+  public void clear()
+  {
+    Arrays.fill(meshes, 0, size, null);
+    Arrays.fill(transforms, 0, size, null);
+    size = 0;
+  }
+
+  /**
+   * Appends a model whose triangles are the world-space mesh world, whose
+   * bounding sphere has global center c and radius r, and whose faces are
+   * culled as culling. If shadowBound, its triangles take their shadows from
+   * this Scene.
+   */
+  public void add(Mesh world, Vec3 c, double r, int culling,
+      boolean shadowBound)
+  {
+    add(world, null, c, r, culling, shadowBound, 1, -1);
+  }
+
+  /**
+   * Appends a model as above, whose triangles are the local mesh taken to
+   * global coordinates by the 4x4 matrix transform, or are already global if
+   * transform is null. Unless alpha is negative, the RGB value of every color
+   * is multiplied by shade and its alpha is replaced by alpha, as by
+   * TriangleBuffer.fade. Neither mesh nor transform may be modified afterwards.
+   */
+  public void add(Mesh mesh, Matrix transform, Vec3 c, double r, int culling,
+      boolean shadowBound, double shade, int alpha)
+  {
+    if (size == meshes.length)
+    {
+      int len = 2 * size;
+      meshes = Arrays.copyOf(meshes, len);
+      transforms = Arrays.copyOf(transforms, len);
+      shades = Arrays.copyOf(shades, len);
+      alphas = Arrays.copyOf(alphas, len);
+      centers = Arrays.copyOf(centers, len);
+      radii = Arrays.copyOf(radii, len);
+      this.culling = Arrays.copyOf(this.culling, len);
+      this.shadowBound = Arrays.copyOf(this.shadowBound, len);
+
+      for (int i = size; i < len; i++)
+        centers[i] = new Vec3();
+    }
+
+    meshes[size] = mesh;
+    transforms[size] = transform;
+    shades[size] = shade;
+    alphas[size] = alpha;
+    centers[size].set(c);
+    radii[size] = r;
+    this.culling[size] = culling;
+    this.shadowBound[size] = shadowBound;
+    size++;
+  }
+
+  /**
+   * Appends every model of models, as by Model.addTo.
+   */
+  public void addAll(Iterable<? extends Model> models)
+  {
+    for (Model m : models)
+      m.addTo(this);
+  }
+
+  /**
+   * Adds every model of this Scene to a rendering pipeline as seen by cam.
+   * Models whose bounding spheres lie outside cam's view frustum are skipped,
+   * and the triangles of models that lie wholly inside it are marked as never
+   * needing to be clipped. Triangles with shadows are shaded by lighting.
+   */
+  public void addTo(TriangleBuffer pipeline, Camera cam)
+  {
+    for (int i = 0; i < size; i++)
+    {
+      int frustum = cam.frustum(centers[i], radii[i]);
+      if (frustum == Camera.OUTSIDE)
+        continue;
+
+      int set = culling[i], clear = 0;
+      if (frustum == Camera.INSIDE)
+        set |= TriangleBuffer.UNCLIPPED;
+
+      if (shadowBound[i])
+      {
+        clear = TriangleBuffer.SHADOWS;
+        set |= shadows ? TriangleBuffer.SHADOWS : 0;
+      }
+
+      Matrix m = transforms[i] == null ?
+          cam.viewProjection : cam.fuse(transforms[i]);
+
+      int start = pipeline.size();
+      pipeline.addMesh(meshes[i], m, set, clear);
+      if (alphas[i] >= 0)
+        pipeline.fade(start, shades[i], alphas[i]);
+      lighting.shade(meshes[i], transforms[i], cam, pipeline, start);
+    }
+  }
+
+  /**
+   * String representation.
+   */
+  public String toString()
+  {
+    return "***SCENE***\nTick: " + tick + "\nModels: " + size + "\n";
+  }
+}
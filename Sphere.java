@@ -1,8 +1,9 @@
 import java.awt.Color;
-import java.util.ArrayList;
+import java.util.HashMap;
 
 /**
- * A Model that represents a spherical configuration.
+ * A Model that represents a spherical configuration. The sphere is stored as
+ * an indexed Mesh, so every vertex is shared by all triangles that touch it.
  *
  * @author Justin C
  */
@@ -26,20 +27,32 @@ public class Sphere extends AnimatedModel
       double radius, Color color, int inflate)
   {
     super(o, sB, 1, 128);
+    culling = TriangleBuffer.CULL_BACK;
 
     if (radius < 0)
       throw new IllegalArgumentException("Sphere cannot have a negative radius!");
 
     r = radius;
 
+    // Every face is wound counterclockwise when seen from outside.
     double[][] coords = {
-        { +r, +r, +r, -r, -r, +r, -r, +r, -r },
+        { +r, +r, +r, -r, +r, -r, -r, -r, +r },
         { +r, +r, +r, -r, -r, +r, +r, -r, -r },
-        { -r, +r, -r, +r, -r, -r, +r, +r, +r },
+        { -r, +r, -r, +r, +r, +r, +r, -r, -r },
         { -r, +r, -r, +r, -r, -r, -r, -r, +r } };
 
+    mesh = new Mesh();
+    int rgb = color.getRGB();
+
     for (int i = 0; i < coords.length; i++)
-      tris.add(new Triangle(coords[i], color));
+    {
+      int[] ids = new int[3];
+      for (int j = 0; j < 3; j++)
+        ids[j] = vertex(mesh, new Vec3(
+            coords[i][3 * j], coords[i][3 * j + 1], coords[i][3 * j + 2]));
+
+      mesh.addTriangle(ids[0], ids[1], ids[2], rgb, 0);
+    }
 
     inflate(inflate);
   }
@@ -60,42 +73,86 @@ public class Sphere extends AnimatedModel
   }
 
   /**
-   * Inflates the current tris once.
+   * Returns the index of v in m, adding v to m if it is not yet present. Only
+   * used while building the starting mesh, which has a handful of vertices.
+   */
+  private static int vertex(Mesh m, Vec3 v)
+  {
+    Vec3 tmp = new Vec3();
+    for (int i = 0; i < m.vertexCount(); i++)
+      if (m.getVertex(i, tmp).equals(v))
+        return i;
+
+    return m.addVertex(v.x, v.y, v.z);
+  }
+
+  /**
+   * Inflates the current mesh once. Every triangle is split into four, and the
+   * midpoint of every edge is created only once by caching it under the key
+   * formed by the indices of the edge's endpoints.
    */
   public void inflate()
   {
-    ArrayList<Triangle> newTris = new ArrayList<Triangle>();
+    Mesh old = mesh;
+    Mesh inflated = new Mesh();
+
+    // Scales every vertex so that it is "r" away from the center of the sphere.
+    Vec3 v = new Vec3();
+    for (int i = 0; i < old.vertexCount(); i++)
+    {
+      old.getVertex(i, v).unit().scaleInto(r, v);
+      inflated.addVertex(v.x, v.y, v.z);
+    }
+
+    HashMap<Long, Integer> midpoints = new HashMap<Long, Integer>();
+    int[] index = old.index;
 
-    for (Triangle t : tris)
+    for (int t = 0; t < old.triangleCount(); t++)
     {
+      int v1 = index[3 * t];
+      int v2 = index[3 * t + 1];
+      int v3 = index[3 * t + 2];
+
       // The midpoints of the sides.
-      Vec3 m1 = new Vec3(
-          t.v1.v[0][0] + t.v2.v[0][0], t.v1.v[1][0] + t.v2.v[1][0], t.v1.v[2][0] + t.v2.v[2][0]);
-      Vec3 m2 = new Vec3(
-          t.v2.v[0][0] + t.v3.v[0][0], t.v2.v[1][0] + t.v3.v[1][0], t.v2.v[2][0] + t.v3.v[2][0]);
-      Vec3 m3 = new Vec3(
-          t.v1.v[0][0] + t.v3.v[0][0], t.v1.v[1][0] + t.v3.v[1][0], t.v1.v[2][0] + t.v3.v[2][0]);
-
-      // Scales them so that all midpoints are "r" away from the center of the sphere.
-      m1 = m1.unit().dot(r);
-      m2 = m2.unit().dot(r);
-      m3 = m3.unit().dot(r);
-      t.v1 = t.v1.unit().dot(r);
-      t.v2 = t.v2.unit().dot(r);
-      t.v3 = t.v3.unit().dot(r);
-
-      // Adds these triangles to the "inflated" tris.
-      newTris.add(new Triangle(t.v1, m1, m3, t.color, false));
-      newTris.add(new Triangle(t.v2, m1, m2, t.color, false));
-      newTris.add(new Triangle(t.v3, m2, m3, t.color, false));
-      newTris.add(new Triangle(m1, m2, m3, t.color, false));
+      int m1 = midpoint(old, inflated, midpoints, v1, v2);
+      int m2 = midpoint(old, inflated, midpoints, v2, v3);
+      int m3 = midpoint(old, inflated, midpoints, v1, v3);
+
+      // Adds these triangles to the "inflated" mesh, keeping the winding of
+      // the original triangle.
+      int c = old.rgb[t];
+      inflated.addTriangle(v1, m1, m3, c, 0);
+      inflated.addTriangle(v2, m2, m1, c, 0);
+      inflated.addTriangle(v3, m3, m2, c, 0);
+      inflated.addTriangle(m1, m2, m3, c, 0);
     }
 
-    // Reassigns the tris.
-    tris = newTris;
+    // Reassigns the mesh; trails that share the old mesh are unaffected.
+    mesh = inflated;
     inflate++;
   }
 
+  /**
+   * Returns the index in "inflated" of the midpoint of the edge between
+   * vertices a and b of "old", scaled so that it is "r" away from the center of
+   * the sphere. The midpoint is created on the first request for the edge.
+   */
+  private int midpoint(Mesh old, Mesh inflated,
+      HashMap<Long, Integer> midpoints, int a, int b)
+  {
+    long key = ((long) Math.min(a, b) << 32) | Math.max(a, b);
+    Integer cached = midpoints.get(key);
+    if (cached != null)
+      return cached;
+
+    Vec3 m = old.getVertex(a, new Vec3()).add(old.getVertex(b, new Vec3()));
+    m = m.unit().dot(r);
+
+    int i = inflated.addVertex(m.x, m.y, m.z);
+    midpoints.put(key, i);
+    return i;
+  }
+
   /**
    * Gets the number of inflations performed.
    */
@@ -0,0 +1,33 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A JDK Flight Recorder event for every stage of a tick or frame that the
+ * Profiler times, committed once the stage is done.
+ *
+ * Unlike a FrameEvent, a StageEvent is not begun and ended around the stage:
+ * it is created after the Profiler has already measured the stage. Its own
+ * start time is when it was committed and its own duration is zero. The time
+ * that the stage took is its time field, taken by the Profiler's clock.
+ *
+ * @author Justin C
+ */
+@Name("vec3d.Stage")
+@Label("Stage")
+@Category("vec3d")
+@Description("A timed stage of a tick or frame")
+public class StageEvent extends Event
+{
+  @Label("Stage")
+  @Description("The name of the stage, as in Profiler.NAMES")
+  public String stage;
+
+  @Label("Time")
+  @Description("The time that the stage took, as measured by the Profiler")
+  @Timespan(Timespan.NANOSECONDS)
+  public long time;
+}
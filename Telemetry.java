@@ -0,0 +1,239 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jdk.jfr.EventType;
+
+/**
+ * Render-loop telemetry that can be watched from outside the process: a
+ * FrameEvent for every frame and a StageEvent for every stage that the
+ * Profiler times, for JDK Flight Recorder, and a TelemetryMBean for JMX.
+ *
+ * Events are only created while a recording has them enabled, so nothing is
+ * allocated for them otherwise. The MBean reads the last WINDOW frame times
+ * and the counts of the last frame, which are kept whether or not anything
+ * is recording; it reads them from another thread, so they are only
+ * approximate.
+ *
+ * @author Justin C
+ */
+public class Telemetry implements TelemetryMBean
+{
+  /**
+   * The only Telemetry, which is registered as the MBean.
+   */
+  public static final Telemetry INSTANCE = new Telemetry();
+
+  /**
+   * The name that the MBean is registered under.
+   */
+  public static final String NAME = "vec3d:type=Telemetry";
+
+  /**
+   * The number of most recent frame times that are kept.
+   */
+  public static final int WINDOW = 256;
+
+  /**
+   * The event types, whose settings say whether events are recorded.
+   */
+  private static final EventType FRAME = EventType.getEventType(FrameEvent.class);
+  private static final EventType STAGE = EventType.getEventType(StageEvent.class);
+
+  /**
+   * The times and end times of the last WINDOW frames in nanoseconds, and
+   * the number of frames so far.
+   */
+  private final long[] times = new long[WINDOW], ends = new long[WINDOW];
+  private volatile long frames;
+
+  /**
+   * The counts of the last frame.
+   */
+  private volatile int triangles, culled, clipped;
+  private volatile long pixels;
+
+  /**
+   * Don't let anyone else instantiate this class.
+   */
+  private Telemetry()
+  {
+
+  }
+
+  /**
+   * Registers INSTANCE with the platform MBean server, unless it already is.
+   */
+  public static synchronized void register()
+  {
+    try
+    {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName(NAME);
+      if (!server.isRegistered(name))
+        server.registerMBean(INSTANCE, name);
+    }
+    catch (JMException e)
+    {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Returns whether stages are being recorded.
+   */
+  public static boolean stagesEnabled()
+  {
+    return STAGE.isEnabled();
+  }
+
+  /**
+   * Records a StageEvent for stage, one of the stages of Profiler, which took
+   * nanos nanoseconds, if stages are being recorded.
+   */
+  public static void stage(int stage, long nanos)
+  {
+    if (!STAGE.isEnabled())
+      return;
+
+    StageEvent e = new StageEvent();
+    e.stage = Profiler.NAMES[stage];
+    e.time = nanos;
+    e.commit();
+  }
+
+  /**
+   * Returns a begun FrameEvent if frames are being recorded, or null.
+   */
+  public static FrameEvent beginFrame()
+  {
+    if (!FRAME.isEnabled())
+      return null;
+
+    FrameEvent e = new FrameEvent();
+    e.begin();
+    return e;
+  }
+
+  /**
+   * Sets the counts of the frame being rendered.
+   */
+  public static void count(int triangles, int culled, int clipped, long pixels)
+  {
+    INSTANCE.triangles = triangles;
+    INSTANCE.culled = culled;
+    INSTANCE.clipped = clipped;
+    INSTANCE.pixels = pixels;
+  }
+
+  /**
+   * Records that a frame which took nanos nanoseconds has ended, and commits
+   * e, from beginFrame(), with the counts of the frame unless it is null.
+   * Called by one thread only.
+   */
+  public static void endFrame(FrameEvent e, long nanos)
+  {
+    Telemetry t = INSTANCE;
+    int i = (int) (t.frames % WINDOW);
+    t.times[i] = nanos;
+    t.ends[i] = System.nanoTime();
+    t.frames++;
+
+    if (e == null)
+      return;
+
+    e.triangles = t.triangles;
+    e.culled = t.culled;
+    e.clipped = t.clipped;
+    e.pixels = t.pixels;
+    e.commit();
+  }
+
+  public long getFrames()
+  {
+    return frames;
+  }
+
+  public double getFrameRate()
+  {
+    long n = Math.min(frames, WINDOW);
+    if (n < 2)
+      return 0;
+
+    long newest = ends[(int) ((frames - 1) % WINDOW)];
+    long oldest = ends[(int) ((frames - n) % WINDOW)];
+    return newest == oldest ? 0 : (n - 1) * 1e9 / (newest - oldest);
+  }
+
+  /**
+   * Returns the p-th percentile of the last frame times in milliseconds.
+   */
+  private double percentile(double p)
+  {
+    int n = (int) Math.min(frames, WINDOW);
+    if (n == 0)
+      return 0;
+
+    long[] t = Arrays.copyOf(times, n);
+    Arrays.sort(t);
+    int i = (int) Math.ceil(p / 100 * n) - 1;
+    return t[Math.max(0, Math.min(n - 1, i))] / 1e6;
+  }
+
+  public double getFrameTimeP50()
+  {
+    return percentile(50);
+  }
+
+  public double getFrameTimeP95()
+  {
+    return percentile(95);
+  }
+
+  public double getFrameTimeP99()
+  {
+    return percentile(99);
+  }
+
+  public int getTriangles()
+  {
+    return triangles;
+  }
+
+  public int getCulled()
+  {
+    return culled;
+  }
+
+  public int getClipped()
+  {
+    return clipped;
+  }
+
+  public long getPixelsWritten()
+  {
+    return pixels;
+  }
+
+  public int getModels()
+  {
+    return Model.pipeline.size();
+  }
+
+  public int getAnimatedModels()
+  {
+    return AnimatedModel.pipeline.size();
+  }
+
+  /**
+   * String representation.
+   */
+  public String toString()
+  {
+    return "***TELEMETRY***\nFrames: " + frames + "\nFPS: " +
+    Matrix.round(getFrameRate(), 3) + "\nTriangles / Culled / Clipped: " +
+    triangles + " / " + culled + " / " + clipped + "\nPixels Written: " +
+    pixels + "\n";
+  }
+}
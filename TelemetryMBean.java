@@ -0,0 +1,50 @@
+/**
+ * The render-loop telemetry that Telemetry exposes over JMX, under the name
+ * vec3d:type=Telemetry.
+ *
+ * @author Justin C
+ */
+public interface TelemetryMBean
+{
+  /**
+   * Returns the number of frames rendered so far.
+   */
+  long getFrames();
+
+  /**
+   * Returns the frame rate over the most recent frames.
+   */
+  double getFrameRate();
+
+  /**
+   * Returns the 50th, 95th, and 99th percentiles of the most recent frame
+   * times, in milliseconds.
+   */
+  double getFrameTimeP50();
+
+  double getFrameTimeP95();
+
+  double getFrameTimeP99();
+
+  /**
+   * Returns the number of triangles in the pipeline of the last frame, and
+   * how many of them were culled and clipped.
+   */
+  int getTriangles();
+
+  int getCulled();
+
+  int getClipped();
+
+  /**
+   * Returns the number of pixels written by the last frame.
+   */
+  long getPixelsWritten();
+
+  /**
+   * Returns the number of Models and AnimatedModels in their pipelines.
+   */
+  int getModels();
+
+  int getAnimatedModels();
+}
@@ -0,0 +1,299 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Renders a TriangleBuffer on multiple cores. Triangles are first clipped and
+ * projected into screen-space triangles, which are then sorted into square
+ * screen tiles. Every tile owns a disjoint slice of the FrameBuffer, so tiles
+ * are rasterized in parallel without any locks.
+ *
+ * Within a tile, triangles are rasterized in pipeline order, so the result is
+ * identical to rendering every triangle on a single thread.
+ *
+ * All intermediate buffers are kept between frames, so a TileRenderer renders
+ * one frame at a time.
+ *
+ * @author Justin C
+ */
+public class TileRenderer
+{
+  /**
+   * The width and height of a tile in pixels.
+   */
+  public final int tileSize;
+
+  /**
+   * The number of threads that transform and rasterize triangles.
+   */
+  public final int threads;
+
+  /**
+   * The pool that executes all tasks. Is null when threads == 1, in which case
+   * everything runs on the calling thread.
+   */
+  private final ForkJoinPool pool;
+
+  /**
+   * The screen-space triangles produced by each transform task, and all of
+   * them in pipeline order.
+   */
+  private final TriangleBuffer[] parts;
+  private final TriangleBuffer ndc = new TriangleBuffer();
+
+  /**
+   * The scratch vectors of each transform task.
+   */
+  private final Vec3[][] scratch;
+
+  /**
+   * bins[t] lists the indices into ndc of the triangles that overlap tile t,
+   * and binSize[t] is the length of that list.
+   */
+  private int[][] bins = new int[0][];
+  private int[] binSize = new int[0];
+
+  /**
+   * The number of triangles of the last frame that were culled for facing the
+   * wrong way, and that lay entirely behind the near plane.
+   */
+  public int culled, clipped;
+
+  /**
+   * The nanoseconds that the last frame spent clipping and projecting its
+   * triangles, and binning and rasterizing them.
+   */
+  public long transformTime, rasterTime;
+
+  /**
+   * The number of pixels written by the last frame, and by each of its tiles.
+   */
+  public long pixels;
+  private long[] tilePixels = new long[0];
+
+  /**
+   * The culled and clipped counts of each transform task.
+   */
+  private final int[] culledParts, clippedParts;
+
+  /**
+   * Constructs a TileRenderer with the specified tile size and thread count.
+   */
+  public TileRenderer(int size, int count)
+  {
+    if (size < 1 || count < 1)
+      throw new IllegalArgumentException(
+          "A TileRenderer requires a positive tile size and thread count!");
+
+    tileSize = size;
+    threads = count;
+    pool = threads == 1 ? null : new ForkJoinPool(threads);
+
+    parts = new TriangleBuffer[threads];
+    scratch = new Vec3[threads][];
+    culledParts = new int[threads];
+    clippedParts = new int[threads];
+    for (int i = 0; i < threads; i++)
+    {
+      parts[i] = new TriangleBuffer();
+      scratch[i] = Triangle.scratch();
+    }
+  }
+
+  /**
+   * Constructs a TileRenderer that uses every available core.
+   */
+  public TileRenderer(int size)
+  {
+    this(size, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Draws every triangle in pipeline, which was built for cam, on fb.
+   */
+  public void render(TriangleBuffer pipeline, Camera cam, FrameBuffer fb)
+  {
+    int w = fb.width;
+    int h = fb.height;
+
+    long start = System.nanoTime();
+    transform(pipeline, cam);
+    long mid = System.nanoTime();
+    transformTime = mid - start;
+
+    // Sorts every triangle into the tiles that its bounds overlap.
+    int cols = (w + tileSize - 1) / tileSize;
+    int rows = (h + tileSize - 1) / tileSize;
+
+    if (bins.length != cols * rows)
+    {
+      bins = new int[cols * rows][64];
+      binSize = new int[cols * rows];
+      tilePixels = new long[cols * rows];
+    }
+    Arrays.fill(binSize, 0);
+    Arrays.fill(tilePixels, 0);
+
+    // The center of the screen, displaced by (0.5, 0.5) for symmetry.
+    double cX = w / 2.0 + 0.5;
+    double cY = h / 2.0 + 0.5;
+
+    double[] xyz = ndc.xyz;
+    int len = ndc.size();
+
+    for (int i = 0; i < len; i++)
+    {
+      int o = 9 * i;
+      double xMin = Math.min(xyz[o], Math.min(xyz[o + 3], xyz[o + 6])) + cX;
+      double xMax = Math.max(xyz[o], Math.max(xyz[o + 3], xyz[o + 6])) + cX;
+      double yMin = Math.min(xyz[o + 1], Math.min(xyz[o + 4], xyz[o + 7])) + cY;
+      double yMax = Math.max(xyz[o + 1], Math.max(xyz[o + 4], xyz[o + 7])) + cY;
+
+      // Skips out-of-frame triangles.
+      if (xMin >= w || xMax <= -1 || yMin >= h || yMax <= -1)
+        continue;
+
+      // Triangle_NDC snaps every vertex to a fraction of a pixel before
+      // finding the pixels it covers, which can move a bound onto the next
+      // pixel, so the bounds are widened to the pixels around them.
+      int tx0 = (int) Math.max(0, Math.floor(xMin)) / tileSize;
+      int tx1 = (int) Math.min(w - 1, Math.ceil(xMax)) / tileSize;
+      int ty0 = (int) Math.max(0, Math.floor(yMin)) / tileSize;
+      int ty1 = (int) Math.min(h - 1, Math.ceil(yMax)) / tileSize;
+
+      for (int ty = ty0; ty <= ty1; ty++)
+        for (int tx = tx0; tx <= tx1; tx++)
+        {
+          int t = ty * cols + tx;
+          if (binSize[t] == bins[t].length)
+            bins[t] = Arrays.copyOf(bins[t], 2 * bins[t].length);
+          bins[t][binSize[t]++] = i;
+        }
+    }
+
+    // Rasterizes every non-empty tile.
+    ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+
+    for (int ty = 0; ty < rows; ty++)
+      for (int tx = 0; tx < cols; tx++)
+      {
+        final int t = ty * cols + tx;
+        if (binSize[t] == 0)
+          continue;
+
+        final int x0 = tx * tileSize;
+        final int y0 = ty * tileSize;
+        final int x1 = Math.min(w, x0 + tileSize) - 1;
+        final int y1 = Math.min(h, y0 + tileSize) - 1;
+
+        tasks.add(() -> {
+          int[] bin = bins[t];
+          long n = 0;
+          for (int j = 0; j < binSize[t]; j++)
+            n += Triangle_NDC.render(xyz, 9 * bin[j], ndc.rgb[bin[j]], fb,
+                x0, y0, x1, y1);
+          tilePixels[t] = n;
+          return null;
+        });
+      }
+
+    invokeAll(tasks);
+    rasterTime = System.nanoTime() - mid;
+
+    pixels = 0;
+    for (long n : tilePixels)
+      pixels += n;
+  }
+
+  /**
+   * Clips and projects every triangle in pipeline into ndc, preserving the
+   * order of the pipeline, and counts the culled and clipped triangles.
+   */
+  private void transform(TriangleBuffer pipeline, Camera cam)
+  {
+    int len = pipeline.size();
+    int chunks = Math.min(threads, Math.max(1, len / 1024));
+    int chunkSize = (len + chunks - 1) / chunks;
+
+    ArrayList<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+
+    for (int i = 0; i < chunks; i++)
+    {
+      final int k = i;
+      final TriangleBuffer part = chunks == 1 ? ndc : parts[i];
+      final Vec3[] tmp = scratch[i];
+      final int start = i * chunkSize;
+      final int end = Math.min(len, start + chunkSize);
+
+      tasks.add(() -> {
+        int cull = 0, clip = 0;
+
+        part.clear();
+        for (int j = start; j < end; j++)
+        {
+          int r = Triangle.draw(pipeline, j, cam, tmp, part);
+          if (r == Triangle.CULLED)
+            cull++;
+          else if (r == Triangle.CLIPPED)
+            clip++;
+        }
+
+        culledParts[k] = cull;
+        clippedParts[k] = clip;
+        return null;
+      });
+    }
+
+    invokeAll(tasks);
+
+    culled = 0;
+    clipped = 0;
+    for (int i = 0; i < chunks; i++)
+    {
+      culled += culledParts[i];
+      clipped += clippedParts[i];
+    }
+
+    if (chunks == 1)
+      return;
+
+    ndc.clear();
+    for (int i = 0; i < chunks; i++)
+      ndc.addAll(parts[i]);
+  }
+
+  /**
+   * Executes every task and waits for all of them to finish.
+   */
+  private void invokeAll(List<Callable<Object>> tasks)
+  {
+    try
+    {
+      if (pool == null)
+      {
+        for (Callable<Object> task : tasks)
+          task.call();
+        return;
+      }
+
+      for (Future<Object> f : pool.invokeAll(tasks))
+        f.get();
+    }
+    catch (Exception e)
+    {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Stops the threads of this TileRenderer.
+   */
+  public void shutdown()
+  {
+    if (pool != null)
+      pool.shutdown();
+  }
+}
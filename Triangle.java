@@ -1,7 +1,4 @@
-import java.awt.Color;
-import java.awt.image.BufferedImage;
 import java.util.Arrays;
-import java.util.ArrayList;
 
 /**
  * A triangle that acts as the building block for all Models.
@@ -16,9 +13,9 @@ public class Triangle
   public Vec3 v1, v2, v3;
 
   /**
-   * The color of the triangle.
+   * The color of the triangle, as a packed ARGB int like Color.getRGB().
    */
-  public Color color;
+  public int rgb;
 
   /**
    * Whether this triangle will be rendered with shadows.
@@ -26,14 +23,15 @@ public class Triangle
   public boolean shadows;
 
   /**
-   * Constructs a Triangle from 3 vertices, a color, and a shadows boolean.
+   * Constructs a Triangle from 3 vertices, an ARGB color, and a shadows
+   * boolean.
    */
-  public Triangle(Vec3 o1, Vec3 o2, Vec3 o3, Color c, boolean s)
+  public Triangle(Vec3 o1, Vec3 o2, Vec3 o3, int c, boolean s)
   {
     v1 = o1;
     v2 = o2;
     v3 = o3;
-    color = c;
+    rgb = c;
     shadows = s;
   }
 
@@ -42,14 +40,14 @@ public class Triangle
    */
   public Triangle(Triangle o)
   {
-    this(new Vec3(o.v1), new Vec3(o.v2), new Vec3(o.v3), o.color, o.shadows);
+    this(new Vec3(o.v1), new Vec3(o.v2), new Vec3(o.v3), o.rgb, o.shadows);
   }
 
   /**
-   * Constructs a Triangle from a double[] of length 9, a color, and a shadows
-   * boolean.
+   * Constructs a Triangle from a double[] of length 9, an ARGB color, and a
+   * shadows boolean.
    */
-  public Triangle(double[] xyz, Color c, boolean s)
+  public Triangle(double[] xyz, int c, boolean s)
   {
     if (xyz.length != 9)
       throw new IllegalArgumentException(
@@ -58,65 +56,64 @@ public class Triangle
     v1 = new Vec3(xyz[0], xyz[1], xyz[2]);
     v2 = new Vec3(xyz[3], xyz[4], xyz[5]);
     v3 = new Vec3(xyz[6], xyz[7], xyz[8]);
-    color = c;
+    rgb = c;
     shadows = s;
   }
 
   /**
    * Constructs a triangle that, by default, has shadows turned off.
    */
-  public Triangle(Vec3 o1, Vec3 o2, Vec3 o3, Color color)
+  public Triangle(Vec3 o1, Vec3 o2, Vec3 o3, int c)
   {
-    this(o1, o2, o3, color, false);
+    this(o1, o2, o3, c, false);
   }
 
   /**
    * Constructs a triangle that, by default, has shadows turned off.
    */
-  public Triangle(double[] xyz, Color color)
+  public Triangle(double[] xyz, int c)
   {
-    this(xyz, color, false);
+    this(xyz, c, false);
   }
 
   /**
-   * Performs a specific linear transformation using precomputed coefficients.
+   * Performs the perspective division on a vertex in clip coordinates
+   * (X, Y, W), replacing it with its screen coordinates (X / W, Y / W) and its
+   * depth Z = W * b + c.
    *
-   * @param a
-   * A linear transformation coefficient.
    * @param b
-   * A linear transformation coefficient.
+   * A projection coefficient.
    * @param c
-   * A linear transformation coefficient.
+   * A projection coefficient.
    */
-  public static void linearTransform(Vec3 v0, double a, double b, double c)
+  public static void project(Vec3 v0, double b, double c)
   {
-    v0.v[0][0] *= a / v0.v[2][0];
-    v0.v[1][0] *= -a / v0.v[2][0];
-    v0.v[2][0] = v0.v[2][0] * b + c;
+    v0.x /= v0.z;
+    v0.y /= v0.z;
+    v0.z = v0.z * b + c;
   }
 
   /**
-   * Generates a BufferedImage with dimension (w,h) from the camera aligned at
-   * b with near clipping plane n, far clipping plane f, and zoom factor z.
+   * The default number of pixels along each side of a rendering tile.
    */
-  public static BufferedImage getImage(ArrayList<Triangle> pipeline,
-  Basis b, int w, int h, double n, double f, double z)
-  {
-    BufferedImage img = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
-    int len = w * h;
-    double[] zib = new double[len];
-    for (int i = 0; i < len; i++)
-      // This essentially clips the far plane.
-      zib[i] = -0.25;
-
-    double xy_1 = -n * z;
-    double z_1 = 2 / (f - n);
-    double z_0 = 2 * n / (f - n) - 2;
+  public static final int TILE_SIZE = Integer.getInteger("vec3d.tileSize", 64);
 
-    for (Triangle t : pipeline)
-      t.draw(b, n, xy_1, z_1, z_0, img, zib);
+  /**
+   * The default number of threads used for rendering.
+   */
+  public static final int THREADS = Integer.getInteger("vec3d.threads",
+      Runtime.getRuntime().availableProcessors());
 
-    return img;
+  /**
+   * Clears fb and draws on it a pipeline that was built for cam.
+   * Rasterization is split into tiles that are rendered by tr. Returns fb.
+   */
+  public static FrameBuffer getImage(TriangleBuffer pipeline,
+  Camera cam, FrameBuffer fb, TileRenderer tr)
+  {
+    fb.clear();
+    tr.render(pipeline, cam, fb);
+    return fb;
   }
 
   /**
@@ -124,100 +121,141 @@ public class Triangle
    */
   public String toString()
   {
-    return "***TRIANGLE***\nVertices: "+v1+v2+v3+"\nColor: "+color+", "+
+    return "***TRIANGLE***\nVertices: "+v1+v2+v3+"\nColor: #"+Integer.toHexString(rgb)+", "+
     (shadows ? "shaded\n" : "unshaded\n");
   }
 
   /**
-   * Draws this triangle by creating and rendering the necessary Triangle_NDCs.
+   * Returns a scratch array that a single thread can pass to draw().
+   */
+  public static Vec3[] scratch()
+  {
+    Vec3[] r = new Vec3[5];
+    for (int i = 0; i < r.length; i++)
+      r[i] = new Vec3();
+    return r;
+  }
+
+  /**
+   * The results of draw(): the triangle was drawn, lay entirely behind the near
+   * plane, or was culled for facing the wrong way.
+   */
+  public static final int DRAWN = 0, CLIPPED = 1, CULLED = 2;
+
+  /**
+   * Draws triangle i of src, whose vertices are in the clip coordinates
+   * (X, Y, W) of cam, by appending the necessary screen-space triangles to
+   * out, in the order that they must be rendered. Clipping against the near
+   * plane happens in clip coordinates, before the perspective division. No
+   * objects are allocated. Returns DRAWN, CLIPPED, or CULLED.
    *
-   * @param basis
-   * The camera basis that this Triangle will be rendered with.
-   * @param n
-   * The near clipping plane of the viewport.
-   * @param a
-   * A precomputed linear transformation coefficient.
-   * @param b
-   * A precomputed linear transformation coefficient.
-   * @param c
-   * A precomputed linear transformation coefficient.
-   * @param img
-   * The image that this triangle will be drawn on.
-   * @param zib
-   * The z-inverse buffer for the image that the triangle will be drawn on.
-   */
-  public void draw(Basis basis, double n, double a, double b, double c,
-      BufferedImage img, double[] zib)
+   * @param cam
+   * The camera that the triangle will be rendered with.
+   * @param tmp
+   * A scratch array from scratch(), which is overwritten.
+   * @param out
+   * The buffer that receives the clipped and projected triangles.
+   */
+  public static int draw(TriangleBuffer src, int i, Camera cam,
+      Vec3[] tmp, TriangleBuffer out)
   {
-    // Orients the vertices with respect to this basis.
-    Vec3[] v = { basis.G_L(v1), basis.G_L(v2), basis.G_L(v3) };
+    double n = cam.near;
+    double b = cam.b;
+    double c = cam.c;
 
-    // Sorts the vertices from closest to farthest.
-    Arrays.sort(v);
-    Vec3 v1 = v[0];
-    Vec3 v2 = v[1];
-    Vec3 v3 = v[2];
+    src.get(i, 0, tmp[0]);
+    src.get(i, 1, tmp[1]);
+    src.get(i, 2, tmp[2]);
 
-    // Gets the color of this triangle.
-    int rgb = color.getRGB();
+    int f = src.flags[i];
 
-    if (shadows)
+    if ((f & (TriangleBuffer.CULL_BACK | TriangleBuffer.CULL_FRONT)) != 0)
     {
-      Vec3 normal = v2.sub(v1).cross(v3.sub(v1));
-      double cosZ = Math.abs(normal.unit().v[2][0]);
-      // 2.4 produces a good shading effect based on testing values
-      double log_shade = Math.pow(cosZ, 1 / 2.4);
+      // The determinant of the clip coordinates is positive if and only if the
+      // vertices appear counterclockwise from the camera. Unlike a test on
+      // screen coordinates, it also holds for vertices behind the camera.
+      Vec3 v1 = tmp[0], v2 = tmp[1], v3 = tmp[2];
+      double det = v1.x * (v2.y * v3.z - v2.z * v3.y)
+          - v1.y * (v2.x * v3.z - v2.z * v3.x)
+          + v1.z * (v2.x * v3.y - v2.y * v3.x);
+
+      if ((f & TriangleBuffer.CULL_BACK) != 0 && det <= 0 ||
+          (f & TriangleBuffer.CULL_FRONT) != 0 && det >= 0)
+        return CULLED;
+    }
 
-      int rr = (int) (((rgb >> 16) & 0xFF) * log_shade);
-      int gg = (int) (((rgb >> 8) & 0xFF) * log_shade);
-      int bb = (int) ((rgb & 0xFF) * log_shade);
+    // Sorts the vertices from closest to farthest, unless they are known to
+    // need no clipping.
+    boolean unclipped = (f & TriangleBuffer.UNCLIPPED) != 0;
+    if (!unclipped)
+      Arrays.sort(tmp, 0, 3);
+    Vec3 v1 = tmp[0];
+    Vec3 v2 = tmp[1];
+    Vec3 v3 = tmp[2];
 
-      rgb = (255 << 24) | (rr << 16) | (gg << 8) | bb;
+    // Gets the color of this triangle, which Lighting has already shaded.
+    int rgb = src.rgb[i];
+
+    if (unclipped)
+    {
+      project(v1, b, c);
+      project(v2, b, c);
+      project(v3, b, c);
+
+      out.add(v1, v2, v3, rgb, 0);
+      return DRAWN;
     }
 
     // Counts the number of vertices that must be clipped.
     int numClips = 0;
 
-    if (v1.v[2][0] >= -n)
+    if (v1.z >= -n)
       numClips++;
-    if (v2.v[2][0] >= -n)
+    if (v2.z >= -n)
       numClips++;
-    if (v3.v[2][0] >= -n)
+    if (v3.z >= -n)
       numClips++;
 
     if (numClips == 3)
-      return;
+      return CLIPPED;
 
     // Appropriately clips the vertices.
     if (numClips == 1)
     {
-      Vec3 vec01 = v2.sub(v1);
-      Vec3 vec02 = v3.sub(v1);
-      Vec3 v1p = v2.add(vec01.dot(-(v2.v[2][0] + n) / vec01.v[2][0]));
-      Vec3 v2p = v3.add(vec02.dot(-(v3.v[2][0] + n) / vec02.v[2][0]));
-
-      linearTransform(v2, a, b, c);
-      linearTransform(v3, a, b, c);
-      linearTransform(v1p, a, b, c);
-      linearTransform(v2p, a, b, c);
-
-      (new Triangle_NDC(v2, v1p, v2p, rgb)).render(img, zib);
-      (new Triangle_NDC(v2p, v3, v2, rgb)).render(img, zib);
-      return;
+      Vec3 v1p = v2.subInto(v1, tmp[3]);
+      v1p.scaleInto(-(v2.z + n) / v1p.z, v1p);
+      v2.addInto(v1p, v1p);
+
+      Vec3 v2p = v3.subInto(v1, tmp[4]);
+      v2p.scaleInto(-(v3.z + n) / v2p.z, v2p);
+      v3.addInto(v2p, v2p);
+
+      project(v2, b, c);
+      project(v3, b, c);
+      project(v1p, b, c);
+      project(v2p, b, c);
+
+      out.add(v2, v1p, v2p, rgb, 0);
+      out.add(v2p, v3, v2, rgb, 0);
+      return DRAWN;
     }
 
     if (numClips == 2)
     {
-      Vec3 vec20 = v1.sub(v3);
-      Vec3 vec21 = v2.sub(v3);
-      v2 = v3.add(vec21.dot((-v3.v[2][0] - n) / vec21.v[2][0]));
-      v1 = v3.add(vec20.dot((-v3.v[2][0] - n) / vec20.v[2][0]));
+      v2.subInto(v3, v2);
+      v2.scaleInto((-v3.z - n) / v2.z, v2);
+      v3.addInto(v2, v2);
+
+      v1.subInto(v3, v1);
+      v1.scaleInto((-v3.z - n) / v1.z, v1);
+      v3.addInto(v1, v1);
     }
 
-    linearTransform(v1, a, b, c);
-    linearTransform(v2, a, b, c);
-    linearTransform(v3, a, b, c);
+    project(v1, b, c);
+    project(v2, b, c);
+    project(v3, b, c);
 
-    (new Triangle_NDC(v1, v2, v3, rgb)).render(img, zib);
+    out.add(v1, v2, v3, rgb, 0);
+    return DRAWN;
   }
 }
@@ -0,0 +1,245 @@
+import java.util.Arrays;
+
+/**
+ * A growable list of triangles stored as a structure of arrays. The nine
+ * coordinates of triangle i are xyz[9 * i] through xyz[9 * i + 8], ordered
+ * (x1, y1, z1, x2, y2, z2, x3, y3, z3), and its color and flags are rgb[i] and
+ * flags[i].
+ *
+ * A TriangleBuffer is meant to be cleared and refilled every frame. Its arrays
+ * only grow, so once they are large enough, refilling allocates nothing.
+ *
+ * @author Justin C
+ */
+public class TriangleBuffer
+{
+  /**
+   * The flag set for triangles that are rendered with shadows. They are
+   * shaded by a Lighting as they are added from a Mesh.
+   */
+  public static final int SHADOWS = 1;
+
+  /**
+   * The flags set for triangles that are culled when they face away from, or
+   * toward, the camera. A triangle faces the camera when its vertices appear
+   * counterclockwise from the camera.
+   */
+  public static final int CULL_BACK = 2, CULL_FRONT = 4;
+
+  /**
+   * The flag set for triangles that lie wholly in front of the near plane, so
+   * they never need to be clipped.
+   */
+  public static final int UNCLIPPED = 8;
+
+  /**
+   * The coordinates of every triangle.
+   */
+  public double[] xyz;
+
+  /**
+   * The ARGB color of every triangle.
+   */
+  public int[] rgb;
+
+  /**
+   * The flags of every triangle.
+   */
+  public int[] flags;
+
+  /**
+   * The number of triangles in this TriangleBuffer.
+   */
+  private int size;
+
+  /**
+   * The clip coordinates of every vertex of the mesh being added, refilled by
+   * every call to addMesh.
+   */
+  private double[] clipped = new double[0];
+
+  /**
+   * Scratch space lent to the stages that shade the triangles being added.
+   */
+  private double[] scratch = new double[0];
+
+  /**
+   * Constructs an empty TriangleBuffer with room for capacity triangles.
+   */
+  public TriangleBuffer(int capacity)
+  {
+    capacity = Math.max(1, capacity);
+    xyz = new double[9 * capacity];
+    rgb = new int[capacity];
+    flags = new int[capacity];
+  }
+
+  /**
+   * Constructs an empty TriangleBuffer.
+   */
+  public TriangleBuffer()
+  {
+    this(1024);
+  }
+
+  /**
+   * Returns the number of triangles in this TriangleBuffer.
+   */
+  public int size()
+  {
+    return size;
+  }
+
+  /**
+   * Removes every triangle without releasing any memory.
+   */
+  public void clear()
+  {
+    size = 0;
+  }
+
+  /**
+   * Grows the arrays so that they can hold at least capacity triangles.
+   */
+  public void ensureCapacity(int capacity)
+  {
+    if (capacity <= rgb.length)
+      return;
+
+    int len = Math.max(capacity, 2 * rgb.length);
+    xyz = Arrays.copyOf(xyz, 9 * len);
+    rgb = Arrays.copyOf(rgb, len);
+    flags = Arrays.copyOf(flags, len);
+  }
+
+  /**
+   * Appends a triangle and returns its index.
+   */
+  public int add(Vec3 v1, Vec3 v2, Vec3 v3, int c, int f)
+  {
+    ensureCapacity(size + 1);
+
+    int o = 9 * size;
+    xyz[o] = v1.x;
+    xyz[o + 1] = v1.y;
+    xyz[o + 2] = v1.z;
+    xyz[o + 3] = v2.x;
+    xyz[o + 4] = v2.y;
+    xyz[o + 5] = v2.z;
+    xyz[o + 6] = v3.x;
+    xyz[o + 7] = v3.y;
+    xyz[o + 8] = v3.z;
+    rgb[size] = c;
+    flags[size] = f;
+
+    return size++;
+  }
+
+  /**
+   * Appends the triangle formed by vertices i1, i2, i3 of v, where vertex i is
+   * stored at v[3 * i] through v[3 * i + 2], and returns its index.
+   */
+  public int add(double[] v, int i1, int i2, int i3, int c, int f)
+  {
+    ensureCapacity(size + 1);
+
+    int o = 9 * size;
+    System.arraycopy(v, 3 * i1, xyz, o, 3);
+    System.arraycopy(v, 3 * i2, xyz, o + 3, 3);
+    System.arraycopy(v, 3 * i3, xyz, o + 6, 3);
+    rgb[size] = c;
+    flags[size] = f;
+
+    return size++;
+  }
+
+  /**
+   * Appends every triangle of mesh, using the 4x4 matrix m to take its
+   * vertices to clip coordinates. Every vertex is transformed once, no matter
+   * how many triangles share it. The flags of every triangle are cleared of
+   * the flags clear and then given the flags set.
+   */
+  public void addMesh(Mesh mesh, Matrix m, int set, int clear)
+  {
+    int vLen = mesh.vertexCount();
+    if (clipped.length < 3 * vLen)
+      clipped = new double[3 * vLen];
+
+    double[] r0 = m.v[0], r1 = m.v[1], r3 = m.v[3];
+    double[] v = mesh.xyz;
+
+    for (int o = 0; o < 3 * vLen; o += 3)
+    {
+      double x = v[o], y = v[o + 1], z = v[o + 2];
+      clipped[o] = r0[0] * x + r0[1] * y + r0[2] * z + r0[3];
+      clipped[o + 1] = r1[0] * x + r1[1] * y + r1[2] * z + r1[3];
+      clipped[o + 2] = r3[0] * x + r3[1] * y + r3[2] * z + r3[3];
+    }
+
+    int tLen = mesh.triangleCount();
+    int[] index = mesh.index;
+    ensureCapacity(size + tLen);
+
+    for (int i = 0; i < tLen; i++)
+      add(clipped, index[3 * i], index[3 * i + 1], index[3 * i + 2],
+          mesh.rgb[i], (mesh.flags[i] & ~clear) | set);
+  }
+
+  /**
+   * Returns an array of at least len doubles that the caller may overwrite
+   * until it next calls scratch. Like the other arrays, it only grows.
+   */
+  public double[] scratch(int len)
+  {
+    if (scratch.length < len)
+      scratch = new double[len];
+    return scratch;
+  }
+
+  /**
+   * Fades the colors of every triangle from index from on: the RGB value of
+   * every color is multiplied by shade and its alpha is replaced by alpha.
+   */
+  public void fade(int from, double shade, int alpha)
+  {
+    for (int i = from; i < size; i++)
+    {
+      int c = rgb[i];
+      rgb[i] = alpha << 24 |
+          (int) ((c >> 16 & 255) * shade) << 16 |
+          (int) ((c >> 8 & 255) * shade) << 8 |
+          (int) ((c & 255) * shade);
+    }
+  }
+
+  /**
+   * Appends every triangle of o, in order.
+   */
+  public void addAll(TriangleBuffer o)
+  {
+    ensureCapacity(size + o.size);
+
+    System.arraycopy(o.xyz, 0, xyz, 9 * size, 9 * o.size);
+    System.arraycopy(o.rgb, 0, rgb, size, o.size);
+    System.arraycopy(o.flags, 0, flags, size, o.size);
+
+    size += o.size;
+  }
+
+  /**
+   * Stores vertex k (0, 1, or 2) of triangle i in out and returns out.
+   */
+  public Vec3 get(int i, int k, Vec3 out)
+  {
+    int o = 9 * i + 3 * k;
+    return out.set(xyz[o], xyz[o + 1], xyz[o + 2]);
+  }
+
+  /**
+   * String representation.
+   */
+  public String toString()
+  {
+    return "***TRIANGLEBUFFER***\nSize: " + size + "\n";
+  }
+}
@@ -1,5 +1,3 @@
-import java.awt.image.BufferedImage;
-
 /**
  * A triangle whose vertices have been expressed in Normalized Device
  * Coordinates and undergone all necessary transformations.
@@ -11,9 +9,28 @@ import java.awt.image.BufferedImage;
 public class Triangle_NDC
 {
   /**
-   * The three vertices of the triangle. Will not be changed!
+   * The number of fractional bits of the fixed-point vertex coordinates that
+   * pixels are tested against.
+   */
+  public static final int SUBPIXEL_BITS = 8;
+
+  /**
+   * Fixed-point coordinates must stay below 2^GUARD_BITS in magnitude, so that
+   * the edge functions cannot overflow a long.
    */
-  private Vec3 v1, v2, v3;
+  private static final int GUARD_BITS = 29;
+
+  /**
+   * A triangle that covers less than 1/THIN of its bounding box is rasterized
+   * by following its edges rather than by walking blocks.
+   */
+  private static final int THIN = 8;
+
+  /**
+   * The coordinates of the three vertices of the triangle, in the layout of
+   * TriangleBuffer.xyz.
+   */
+  private final double[] xyz;
 
   /**
    * The color value of this triangle.
@@ -22,12 +39,12 @@ public class Triangle_NDC
 
   /**
    * Constructs a Triangle_NDC from 3 vertices and an integer representing rgb.
+   * The coordinates of the vertices are copied, so the vertices may be reused.
    */
   public Triangle_NDC(Vec3 o1, Vec3 o2, Vec3 o3, int c)
   {
-    v1 = o1;
-    v2 = o2;
-    v3 = o3;
+    xyz = new double[] {
+        o1.x, o1.y, o1.z, o2.x, o2.y, o2.z, o3.x, o3.y, o3.z };
     rgb = c;
   }
 
@@ -38,8 +55,27 @@ public class Triangle_NDC
    */
   public static double edge(Vec3 v1, Vec3 v2, Vec3 v3)
   {
-    return (v3.v[0][0] - v1.v[0][0]) * (v2.v[1][0] - v1.v[1][0])
-        - (v3.v[1][0] - v1.v[1][0]) * (v2.v[0][0] - v1.v[0][0]);
+    return edge(v1.x, v1.y, v2.x, v2.y, v3.x, v3.y);
+  }
+
+  /**
+   * Returns twice the signed area of the triangle formed by the vertices
+   * (x1, y1), (x2, y2), (x3, y3).
+   */
+  public static double edge(double x1, double y1, double x2, double y2,
+      double x3, double y3)
+  {
+    return (x3 - x1) * (y2 - y1) - (y3 - y1) * (x2 - x1);
+  }
+
+  /**
+   * Returns twice the signed area of the triangle formed by the vertices
+   * (x1, y1), (x2, y2), (x3, y3), in fixed-point coordinates.
+   */
+  public static long edge(long x1, long y1, long x2, long y2,
+      long x3, long y3)
+  {
+    return (x3 - x1) * (y2 - y1) - (y3 - y1) * (x2 - x1);
   }
 
   /**
@@ -74,117 +110,349 @@ public class Triangle_NDC
    */
   public String toString()
   {
-    return "***TRIANGLE_NDC***\nVertices: "+v1+v2+v3+"\nRGB: "+rgb+"\n";
+    return "***TRIANGLE_NDC***\nVertices: "+new Vec3(xyz[0], xyz[1], xyz[2])+
+    new Vec3(xyz[3], xyz[4], xyz[5])+new Vec3(xyz[6], xyz[7], xyz[8])+
+    "\nRGB: "+rgb+"\n";
   }
 
   /**
-   * Renders this triangle on a BufferedImage.
+   * Renders this triangle on a FrameBuffer.
+   */
+  public void render(FrameBuffer fb)
+  {
+    render(fb, 0, 0, fb.width - 1, fb.height - 1);
+  }
+
+  /**
+   * Renders the part of this triangle that lies within the pixel rectangle
+   * [x0, x1_r] by [y0, y1_r] on a FrameBuffer. Pixels outside the rectangle are
+   * never read or written, so disjoint rectangles can be rendered concurrently.
    *
-   * Consider a Triangle t with vertices v1, v2, v3. Every point v0 can be
-   * expressed as v0 = v1 * b1 + v2 * b2 + v3 * b3, where (b1, b2, b3) are the
-   * unique barycentric coordinates of v.
+   * The vertices are snapped to fixed-point coordinates with SUBPIXEL_BITS
+   * fractional bits. For every edge (a, b) of the triangle, the edge function
+   * E(p) = edge(a, b, p) is then an exact integer that is positive on the
+   * inside of the edge, zero on it, and negative outside. Pixel p is covered
+   * if all three edge functions are positive, or zero on a top or left edge.
+   * Two triangles that share an edge snap it identically and see it from
+   * opposite sides, so every pixel on it is drawn by exactly one of them.
    *
-   * Let [n1/n2/n3] be the area of the triangle formed by v_n1, v_n2, v_n3.
-   * Then (b1, b2, b3) = ([230]/[231], [310]/[312], [120]/[123]). This implies
-   * that v0 is contained within t if and only if b1 >= 0, b2 >= 0, b3 >= 0.
+   * Divided by twice the area of the triangle, the three edge functions are
+   * the barycentric coordinates of p, and the depth inverse, an attribute
+   * that is linear in screen space, is interpolated with them. Along a row,
+   * both are stepped from their values at the start of the row by the
+   * Rasterizer that fills it.
    *
-   * Consider a vertex v_n with a corresponding vertex attribute with weight
-   * w_n. Then w0 = w1 * b1 + w2 * b2 + w3 * b3, by barycentric interpolation.
+   * If the vertices lie so far off screen that their fixed-point coordinates
+   * would overflow, subpixel bits are given up until they fit.
    *
-   * _i = inverse, _c = center, _s = start increment.
-   * _* is used to avoid operators in the rendering loop.
+   * Every block of the hierarchical z-buffer that the bounds overlap is walked
+   * row by row, in memory order, and every edge function is evaluated exactly
+   * at the start of each row, so a pixel is shaded identically no matter
+   * which rectangle it is rendered through. The edge functions at the corners
+   * of a block decide whether the triangle misses it, so it is skipped, or
+   * covers it, so its pixels need no edge tests. Blocks where the triangle is
+   * hidden by what has already been drawn are skipped as well.
    *
-   * Note: The idea to use addition to minimize in-loop operations is attributed
-   * to https://fgiesen.wordpress.com/2013/02/10/optimizing-the-basic-rasterizer/
+   * A thin triangle, which only partly covers most of the blocks it
+   * overlaps, instead finds the span between its edges on every row and
+   * only visits the pixels in it.
    *
-   * @param zib
-   * Corresponds to the inverses of the filled depths of each pixel. zib stands
-   * for zInverseBuffer. Depth is measured along the z-axis that faces the
-   * camera, so further objects have a higher zib.
+   * Returns the number of pixels written.
+   *
+   * _i = inverse, _f = fixed point, _s = step along a row.
    */
-  public void render(BufferedImage img, double[] zib)
+  public int render(FrameBuffer fb, int x0, int y0, int x1_r, int y1_r)
   {
-    // The width and height of the image.*
-    int w = img.getWidth();
-    int h = img.getHeight();
+    return render(xyz, 0, rgb, fb, x0, y0, x1_r, y1_r);
+  }
+
+  /**
+   * Renders the triangle whose coordinates start at xyz[o], in the layout of
+   * TriangleBuffer.xyz, with color rgb. Otherwise identical to
+   * render(fb, x0, y0, x1_r, y1_r).
+   */
+  public static int render(double[] xyz, int o, int rgb, FrameBuffer fb,
+      int x0, int y0, int x1_r, int y1_r)
+  {
+    // The width and height of the image.
+    int w = fb.width;
+    int h = fb.height;
+
+    // Fills the covered pixels of every row.
+    Rasterizer rows = Rasterizer.ACTIVE;
 
     // The center of the screen, displaced by (0.5, 0.5) for symmetry.
-    Vec3 center = new Vec3(w / 2.0 + 0.5, h / 2.0 + 0.5, 0);
+    double cX = w / 2.0 + 0.5;
+    double cY = h / 2.0 + 0.5;
 
-    v1 = v1.add(center);
-    v2 = v2.add(center);
-    v3 = v3.add(center);
+    // The vertices in pixel coordinates.
+    double x1 = xyz[o] + cX, y1 = xyz[o + 1] + cY;
+    double x2 = xyz[o + 3] + cX, y2 = xyz[o + 4] + cY;
+    double x3 = xyz[o + 6] + cX, y3 = xyz[o + 7] + cY;
 
     // Minimize rendering operations by finding rectangular bounds that this
     // triangle can be inscribed inside. (left, right, bottom, top)
-    double xMin = Math.min(v1.v[0][0], Math.min(v2.v[0][0], v3.v[0][0]));
-    double xMax = Math.max(v1.v[0][0], Math.max(v2.v[0][0], v3.v[0][0]));
-    double yMin = Math.min(v1.v[1][0], Math.min(v2.v[1][0], v3.v[1][0]));
-    double yMax = Math.max(v1.v[1][0], Math.max(v2.v[1][0], v3.v[1][0]));
+    double xMin = Math.min(x1, Math.min(x2, x3));
+    double xMax = Math.max(x1, Math.max(x2, x3));
+    double yMin = Math.min(y1, Math.min(y2, y3));
+    double yMax = Math.max(y1, Math.max(y2, y3));
+
+    // If the triangle is outside of the rectangle, leave the image untouched.
+    if (xMin > x1_r + 1 || xMax < x0 - 1 || yMin > y1_r + 1 || yMax < y0 - 1)
+      return 0;
 
-    // If the triangle is out-of-frame, return the original img.
-    if (xMin > w - 1 || xMax < 0 || yMin > h - 1 || yMax < 0)
-      return;
+    // Gives up subpixel bits until the fixed-point coordinates fit.
+    double extent = Math.max(Math.max(-xMin, xMax), Math.max(-yMin, yMax));
+    int sub = SUBPIXEL_BITS;
+    while (sub > 0 && extent >= (double) (1L << (GUARD_BITS - sub)))
+      sub--;
 
-    // The inverses of the z-coordinates.*
-    double z1_i = 1 / v1.v[2][0];
-    double z2_i = 1 / v2.v[2][0];
-    double z3_i = 1 / v3.v[2][0];
+    // Such a triangle cannot even be snapped to whole pixels.
+    if (extent >= (double) (1L << GUARD_BITS))
+      return 0;
+
+    // The vertices in fixed-point coordinates.
+    double one = 1L << sub;
+    long x1_f = Math.round(x1 * one), y1_f = Math.round(y1 * one);
+    long x2_f = Math.round(x2 * one), y2_f = Math.round(y2 * one);
+    long x3_f = Math.round(x3 * one), y3_f = Math.round(y3 * one);
+
+    // The inverses of the z-coordinates.
+    double z1_i = 1 / xyz[o + 2];
+    double z2_i = 1 / xyz[o + 5];
+    double z3_i = 1 / xyz[o + 8];
+
+    // Twice the area of the triangle. Orients the triangle counterclockwise,
+    // so that its inside is where all three edge functions are positive.
+    long area = edge(x1_f, y1_f, x2_f, y2_f, x3_f, y3_f);
+    if (area == 0)
+      return 0;
+
+    if (area < 0)
+    {
+      long t = x2_f;
+      x2_f = x3_f;
+      x3_f = t;
+      t = y2_f;
+      y2_f = y3_f;
+      y3_f = t;
+      double z = z2_i;
+      z2_i = z3_i;
+      z3_i = z;
+      area = -area;
+    }
+
+    // The bounds of the triangle in fixed-point coordinates.
+    long xMin_f = Math.min(x1_f, Math.min(x2_f, x3_f));
+    long xMax_f = Math.max(x1_f, Math.max(x2_f, x3_f));
+    long yMin_f = Math.min(y1_f, Math.min(y2_f, y3_f));
+    long yMax_f = Math.max(y1_f, Math.max(y2_f, y3_f));
 
     // Convert the rectangle bounds into integer pixel coordinates.
-    int minX = (int) Math.max(0, Math.ceil(xMin));
-    int maxX = (int) Math.min(w - 1, Math.floor(xMax));
-    int minY = (int) Math.max(0, Math.ceil(yMin));
-    int maxY = (int) Math.min(h - 1, Math.floor(yMax));
-
-    // Top-left corner of the bounding rectangle, where rasterization begins.
-    Vec3 start = new Vec3(minX, minY, 0);
-
-    // Inverse of twice the area of the triangle.
-    double area_inv = 1 / edge(v1, v2, v3);
-
-    // Constants for incrementing start's (y, z) coordinates.
-    double x1_s = (v3.v[1][0] - v2.v[1][0]) * area_inv;
-    double x2_s = (v1.v[1][0] - v3.v[1][0]) * area_inv;
-    double x3_s = (v2.v[1][0] - v1.v[1][0]) * area_inv;
-    double y1_s = (v2.v[0][0] - v3.v[0][0]) * area_inv;
-    double y2_s = (v3.v[0][0] - v1.v[0][0]) * area_inv;
-    double y3_s = (v1.v[0][0] - v2.v[0][0]) * area_inv;
-    double b1_s = edge(v2, v3, start) * area_inv;
-    double b2_s = edge(v3, v1, start) * area_inv;
-    double b3_s = edge(v1, v2, start) * area_inv;
-
-    // For every pixel on the screen ...
-    for (int x = minX; x <= maxX; x++)
+    long s = 1L << sub;
+    int minX = (int) Math.max(x0, -Math.floorDiv(-xMin_f, s));
+    int maxX = (int) Math.min(x1_r, Math.floorDiv(xMax_f, s));
+    int minY = (int) Math.max(y0, -Math.floorDiv(-yMin_f, s));
+    int maxY = (int) Math.min(y1_r, Math.floorDiv(yMax_f, s));
+
+    if (minX > maxX || minY > maxY)
+      return 0;
+
+    // The edge functions E1 = edge(v2, v3, p), E2 = edge(v3, v1, p), and
+    // E3 = edge(v1, v2, p) are E = (p.x - a.x) * A - (p.y - a.y) * B.
+    long A1 = y3_f - y2_f, B1 = x3_f - x2_f;
+    long A2 = y1_f - y3_f, B2 = x1_f - x3_f;
+    long A3 = y2_f - y1_f, B3 = x2_f - x1_f;
+
+    // The top-left fill rule: pixels exactly on an edge are only covered if
+    // the edge is a top or left edge, by treating E = 0 as outside on the
+    // others.
+    long bias1 = A1 > 0 || A1 == 0 && B1 < 0 ? 0 : -1;
+    long bias2 = A2 > 0 || A2 == 0 && B2 < 0 ? 0 : -1;
+    long bias3 = A3 > 0 || A3 == 0 && B3 < 0 ? 0 : -1;
+
+    // The steps of the edge functions from one pixel to the next in a row,
+    // and from one row to the next.
+    long e1_s = A1 << sub, e2_s = A2 << sub, e3_s = A3 << sub;
+    long e1_r = -B1 << sub, e2_r = -B2 << sub, e3_r = -B3 << sub;
+
+    // The depth inverse is E1 * z1_i + E2 * z2_i + E3 * z3_i over the area.
+    double area_i = 1.0 / area;
+    double depth_s = (e1_s * z1_i + e2_s * z2_i + e3_s * z3_i) * area_i;
+
+    // The nearest z-inverse of the triangle, less a margin for the rounding of
+    // interpolated depths. Nothing can be drawn in a block whose farthest
+    // depth is no farther than this.
+    double near_i = Math.min(z1_i, Math.min(z2_i, z3_i)) - 1e-9;
+
+    // The hierarchical z-buffer is only read when the rectangle is made of
+    // whole blocks, so that no other rectangle can be writing to them.
+    int B = FrameBuffer.BLOCK;
+    boolean aligned = x0 % B == 0 && y0 % B == 0 &&
+        ((x1_r + 1) % B == 0 || x1_r == w - 1) &&
+        ((y1_r + 1) % B == 0 || y1_r == h - 1);
+
+    // A triangle that covers less than 1/THIN of its bounds is thin. Most
+    // blocks along a thin diagonal are only partly covered, so instead of
+    // walking blocks, it follows its edges: every row is narrowed to the span
+    // between them before any pixel is visited.
+    // The number of pixels written.
+    int written = 0;
+
+    if ((double) (xMax_f - xMin_f) * (yMax_f - yMin_f) > THIN / 2.0 * area)
     {
-      double b1 = b1_s;
-      double b2 = b2_s;
-      double b3 = b3_s;
+      // The range of blocks of the current band of rows that have been
+      // written to. They are only marked dirty once the band is done, so the
+      // blocks are not found again for every row.
+      int wMin = Integer.MAX_VALUE, wMax = -1;
 
+      // For every row of the bounds ...
       for (int y = minY; y <= maxY; y++)
       {
-        // If the triangle contains the pixel ...
-        if (b1 >= 0 && b2 >= 0 && b3 >= 0)
+        long px = (long) minX << sub, py = (long) y << sub;
+        long e1 = (px - x2_f) * A1 - (py - y2_f) * B1 + bias1;
+        long e2 = (px - x3_f) * A2 - (py - y3_f) * B2 + bias2;
+        long e3 = (px - x1_f) * A3 - (py - y1_f) * B3 + bias3;
+
+        // The span of the row that lies inside all three edges.
+        long lo = Math.max(first(e1, e1_s),
+            Math.max(first(e2, e2_s), first(e3, e3_s)));
+        long hi = Math.min(last(e1, e1_s),
+            Math.min(last(e2, e2_s), last(e3, e3_s)));
+        hi = Math.min(hi, maxX - minX);
+
+        // For every block that the span overlaps ...
+        for (int x = (int) (minX + lo); lo <= hi && x <= minX + hi; )
         {
-          // Use interpolation to find the depth; the vertex attribute is the
-          // depth inverse because all points have been scaled by 1/v[0][0].
-          double depth_i = b1 * z1_i + b2 * z2_i + b3 * z3_i;
-          int zIndex = y * w + x;
+          int bx = x / B;
+          int end = (int) Math.min(minX + hi, bx * B + B - 1);
+          int block = (y / B) * fb.blocksX + bx;
 
-          if (zib[zIndex] > depth_i)
+          // If the triangle is behind everything in the block, skip the
+          // block. A thin triangle covers too little of a block to be worth
+          // tightening its bound.
+          if (!aligned || near_i < fb.bound(block))
           {
-            // Composites the final color, with transparency, over the image.
-            img.setRGB(x, y, composite(rgb, img.getRGB(x, y)));
-            zib[zIndex] = depth_i;
+            px = (long) x << sub;
+            long f1 = (px - x2_f) * A1 - (py - y2_f) * B1;
+            long f2 = (px - x3_f) * A2 - (py - y3_f) * B2;
+            long f3 = (px - x1_f) * A3 - (py - y1_f) * B3;
+            double depth_i = (f1 * z1_i + f2 * z2_i + f3 * z3_i) * area_i;
+
+            // Fills the span of the row in the block, which is covered.
+            int n = rows.fill(fb, y * w + x, end - x + 1,
+                0, 0, 0, 0, 0, 0, true, depth_i, depth_s, rgb);
+            written += n;
+
+            if (n > 0)
+            {
+              wMin = Math.min(wMin, bx);
+              wMax = Math.max(wMax, bx);
+            }
           }
+
+          x = end + 1;
+        }
+
+        // Marks the written blocks of a finished band dirty.
+        if (y % B == B - 1 || y == maxY)
+        {
+          for (int bx = wMin; bx <= wMax; bx++)
+            fb.dirty[(y / B) * fb.blocksX + bx] = true;
+
+          wMin = Integer.MAX_VALUE;
+          wMax = -1;
         }
-        b1 += y1_s;
-        b2 += y2_s;
-        b3 += y3_s;
       }
-      b1_s += x1_s;
-      b2_s += x2_s;
-      b3_s += x3_s;
+
+      return written;
     }
+
+    // For every block that the bounds overlap ...
+    for (int by = minY / B; by <= maxY / B; by++)
+      for (int bx = minX / B; bx <= maxX / B; bx++)
+      {
+        int bMinX = Math.max(minX, bx * B);
+        int bMaxX = Math.min(maxX, bx * B + B - 1);
+        int bMinY = Math.max(minY, by * B);
+        int bMaxY = Math.min(maxY, by * B + B - 1);
+
+        // The edge functions at the top-left corner of the block, and their
+        // changes to the other corners. As they are linear, an edge that all
+        // four corners are outside of excludes the whole block, and an edge
+        // that all four corners are inside of includes it.
+        long px = (long) bMinX << sub, py = (long) bMinY << sub;
+        long c1 = (px - x2_f) * A1 - (py - y2_f) * B1 + bias1;
+        long c2 = (px - x3_f) * A2 - (py - y3_f) * B2 + bias2;
+        long c3 = (px - x1_f) * A3 - (py - y1_f) * B3 + bias3;
+        int dx = bMaxX - bMinX, dy = bMaxY - bMinY;
+
+        long max1 = c1 + Math.max(0, dx * e1_s) + Math.max(0, dy * e1_r);
+        long max2 = c2 + Math.max(0, dx * e2_s) + Math.max(0, dy * e2_r);
+        long max3 = c3 + Math.max(0, dx * e3_s) + Math.max(0, dy * e3_r);
+
+        // If the triangle misses the block, skip the block.
+        if ((max1 | max2 | max3) < 0)
+          continue;
+
+        int block = by * fb.blocksX + bx;
+
+        // If the triangle is behind everything in the block, skip the block.
+        if (aligned && near_i >= fb.farthest(block))
+          continue;
+
+        long min1 = c1 + Math.min(0, dx * e1_s) + Math.min(0, dy * e1_r);
+        long min2 = c2 + Math.min(0, dx * e2_s) + Math.min(0, dy * e2_r);
+        long min3 = c3 + Math.min(0, dx * e3_s) + Math.min(0, dy * e3_r);
+
+        // Whether the triangle covers the whole block, so that no pixel needs
+        // to be tested against its edges.
+        boolean covered = (min1 | min2 | min3) >= 0;
+        int wrote = 0;
+
+        // For every row of the block ...
+        for (int y = bMinY; y <= bMaxY; y++)
+        {
+          long e1 = c1 + (y - bMinY) * e1_r;
+          long e2 = c2 + (y - bMinY) * e2_r;
+          long e3 = c3 + (y - bMinY) * e3_r;
+          double depth_i = ((e1 - bias1) * z1_i + (e2 - bias2) * z2_i +
+              (e3 - bias3) * z3_i) * area_i;
+
+          // Fills every covered pixel of the row.
+          wrote += rows.fill(fb, y * w + bMinX, bMaxX - bMinX + 1,
+              e1, e2, e3, e1_s, e2_s, e3_s, covered, depth_i, depth_s, rgb);
+        }
+
+        if (wrote > 0)
+          fb.dirty[block] = true;
+        written += wrote;
+      }
+
+    return written;
+  }
+
+  /**
+   * Returns the first k >= 0 for which e + k * s >= 0, or Long.MAX_VALUE if
+   * there is none.
+   */
+  private static long first(long e, long s)
+  {
+    if (e >= 0)
+      return 0;
+    if (s <= 0)
+      return Long.MAX_VALUE;
+    return -Math.floorDiv(e, s);
+  }
+
+  /**
+   * Returns the last k for which e + k * s >= 0, Long.MAX_VALUE if there is no
+   * last one, or -1 if there is none at all.
+   */
+  private static long last(long e, long s)
+  {
+    if (s >= 0)
+      return e >= 0 || s > 0 ? Long.MAX_VALUE : -1;
+    return Math.floorDiv(e, -s);
   }
 }
@@ -2,16 +2,26 @@
  * A Re^3 vector that supports vector operations. Compatible with the OpenGL
  * convention.
  *
+ * The coordinates are stored directly in x, y, z. Operations such as add()
+ * return a new Vec3, while operations ending in "Into" write their result
+ * into an existing Vec3 so that hot loops can run without allocating. The
+ * output of an "Into" operation may be the same Vec3 as either operand.
+ *
  * @author Justin C
  */
-public class Vec3 extends Matrix implements Comparable<Vec3>
+public class Vec3 implements Comparable<Vec3>
 {
+  /**
+   * The coordinates of this Vec3.
+   */
+  public double x, y, z;
+
   /**
    * Constructs a Vec3 at (0, 0, 0).
    */
   public Vec3()
   {
-    super(3, 1);
+
   }
 
   /**
@@ -19,7 +29,9 @@ public class Vec3 extends Matrix implements Comparable<Vec3>
    */
   public Vec3(double x, double y, double z)
   {
-    super(new double[] { x, y, z });
+    this.x = x;
+    this.y = y;
+    this.z = z;
   }
 
   /**
@@ -31,20 +43,55 @@ public class Vec3 extends Matrix implements Comparable<Vec3>
   }
 
   /**
-   * Constructs a Vec3 from a Matrix. Also a copy constructor.
+   * Constructs a Vec3 from the first column of a Matrix.
    */
   public Vec3(Matrix o)
   {
     this(o, 0);
   }
 
+  /**
+   * Copy constructor.
+   */
+  public Vec3(Vec3 o)
+  {
+    this(o.x, o.y, o.z);
+  }
+
+  /**
+   * Sets this Vec3 to (x, y, z) and returns it.
+   */
+  public Vec3 set(double x, double y, double z)
+  {
+    this.x = x;
+    this.y = y;
+    this.z = z;
+    return this;
+  }
+
+  /**
+   * Sets this Vec3 to o and returns it.
+   */
+  public Vec3 set(Vec3 o)
+  {
+    return set(o.x, o.y, o.z);
+  }
+
+  /**
+   * Returns this Vec3 as a 3x1 Matrix.
+   */
+  public Matrix toMatrix()
+  {
+    return new Matrix(new double[] { x, y, z });
+  }
+
   /**
    * Returns the square of the length of the line segment from
    * (0, 0, 0) to this Vec3.
    */
   public double lengthSquared()
   {
-    return v[0][0] * v[0][0] + v[1][0] * v[1][0] + v[2][0] * v[2][0];
+    return x * x + y * y + z * z;
   }
 
   /**
@@ -56,43 +103,44 @@ public class Vec3 extends Matrix implements Comparable<Vec3>
   }
 
   /**
-   * Returns (Vec3) (this.add(o)).
+   * Returns (this + o).
    */
   public Vec3 add(Vec3 o)
   {
-    return new Vec3(super.add(o));
+    return addInto(o, new Vec3());
   }
 
   /**
-   * Returns (Vec3) (this.add(-o)).
+   * Returns (this - o).
    */
   public Vec3 sub(Vec3 o)
   {
-    return this.add(o.dot(-1));
+    return subInto(o, new Vec3());
   }
 
   /**
-   * Returns (Vec3) (this.dot(o)).
+   * Returns (this * o), where every coordinate of (this) is pairwise
+   * multiplied with the corresponding coordinate of (o).
    */
   public Vec3 dot(Vec3 o)
   {
-    return new Vec3(super.dot(o));
+    return new Vec3(x * o.x, y * o.y, z * o.z);
   }
 
   /**
-   * Returns (Vec3) (this.dot(o)).
+   * Returns (this * o) where o is a scalar.
    */
   public Vec3 dot(double o)
   {
-    return new Vec3(super.dot(o));
+    return scaleInto(o, new Vec3());
   }
 
   /**
-   * Returns (Vec3) (o.times(this)).
+   * Returns (o.times(this)), where o is a 3x3 Matrix.
    */
   public Vec3 itimes(Matrix o)
   {
-    return new Vec3(o.times(this));
+    return itimesInto(o, new Vec3());
   }
 
   /**
@@ -108,11 +156,54 @@ public class Vec3 extends Matrix implements Comparable<Vec3>
    */
   public Vec3 cross(Vec3 o)
   {
-    return new Vec3(
-        v[1][0] * o.v[2][0] - v[2][0] * o.v[1][0],
-        v[2][0] * o.v[0][0] - v[0][0] * o.v[2][0],
-        v[0][0] * o.v[1][0] - v[1][0] * o.v[0][0]
-    );
+    return crossInto(o, new Vec3());
+  }
+
+  /**
+   * Stores (this + o) in out and returns out.
+   */
+  public Vec3 addInto(Vec3 o, Vec3 out)
+  {
+    return out.set(x + o.x, y + o.y, z + o.z);
+  }
+
+  /**
+   * Stores (this - o) in out and returns out.
+   */
+  public Vec3 subInto(Vec3 o, Vec3 out)
+  {
+    return out.set(x - o.x, y - o.y, z - o.z);
+  }
+
+  /**
+   * Stores (this * s) in out, where s is a scalar, and returns out.
+   */
+  public Vec3 scaleInto(double s, Vec3 out)
+  {
+    return out.set(x * s, y * s, z * s);
+  }
+
+  /**
+   * Stores the cross product "this x o" in out and returns out.
+   */
+  public Vec3 crossInto(Vec3 o, Vec3 out)
+  {
+    return out.set(
+        y * o.z - z * o.y,
+        z * o.x - x * o.z,
+        x * o.y - y * o.x);
+  }
+
+  /**
+   * Stores (o.times(this)) in out, where o is a 3x3 Matrix, and returns out.
+   */
+  public Vec3 itimesInto(Matrix o, Vec3 out)
+  {
+    double[][] m = o.v;
+    return out.set(
+        m[0][0] * x + m[0][1] * y + m[0][2] * z,
+        m[1][0] * x + m[1][1] * y + m[1][2] * z,
+        m[2][0] * x + m[2][1] * y + m[2][2] * z);
   }
 
   /**
@@ -124,9 +215,16 @@ public class Vec3 extends Matrix implements Comparable<Vec3>
       return false;
 
     Vec3 other = (Vec3) o;
-    return other.v[0][0] == v[0][0] &&
-        other.v[1][0] == v[1][0] &&
-        other.v[2][0] == v[2][0];
+    return other.x == x && other.y == y && other.z == z;
+  }
+
+  /**
+   * Consistent with equals.
+   */
+  public int hashCode()
+  {
+    return Double.hashCode(x) * 961 + Double.hashCode(y) * 31 +
+        Double.hashCode(z);
   }
 
   /**
@@ -134,7 +232,7 @@ public class Vec3 extends Matrix implements Comparable<Vec3>
    */
   public int compareTo(Vec3 o)
   {
-    return (int) (o.v[2][0] - v[2][0]);
+    return (int) (o.z - z);
   }
 
   /**
@@ -143,8 +241,8 @@ public class Vec3 extends Matrix implements Comparable<Vec3>
   public String toString()
   {
     return "(" +
-      Matrix.round(v[0][0], 3)+", "+
-      Matrix.round(v[1][0], 3)+", "+
-      Matrix.round(v[2][0], 3)+")";
+      Matrix.round(x, 3)+", "+
+      Matrix.round(y, 3)+", "+
+      Matrix.round(z, 3)+")";
   }
 }
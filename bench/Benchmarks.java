@@ -0,0 +1,370 @@
+import java.awt.Color;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks of the math, transform, and rasterization hot paths, for
+ * catching performance regressions.
+ *
+ * The project has no build file and no dependencies, so instead of JMH this
+ * is a small harness in the same spirit: every benchmark runs in a JVM of its
+ * own, is warmed up before it is measured, and is measured over several
+ * iterations, reporting the mean time per operation with its standard
+ * deviation. The result of every operation is consumed through a volatile
+ * field, so that it cannot be optimized away. The bytes allocated per
+ * operation, by every thread, are measured as JMH's GC profiler would report
+ * them (gc.alloc.rate.norm).
+ *
+ * Compile and run from the project directory with:
+ *
+ * javac -d out *.java
+ * javac -cp out -d out bench/*.java
+ * java -cp out Benchmarks [regex]
+ *
+ * where only the benchmarks whose names contain a match of regex are run.
+ * System properties: bench.warmup and bench.time are the milliseconds of
+ * warming up and of every iteration, bench.iterations is the number of
+ * iterations, and bench.fork=false runs every benchmark in this JVM.
+ *
+ * @author Justin C
+ */
+public class Benchmarks
+{
+  /**
+   * The milliseconds of warming up and of every measured iteration, and the
+   * number of measured iterations.
+   */
+  private static final int WARMUP = Integer.getInteger("bench.warmup", 1000);
+  private static final int TIME = Integer.getInteger("bench.time", 500);
+  private static final int ITERATIONS = Integer.getInteger("bench.iterations", 5);
+
+  /**
+   * The width and height of the FrameBuffer that single triangles are
+   * rendered on.
+   */
+  private static final int SIZE = 256;
+
+  /**
+   * Receives the result of every operation.
+   */
+  public static volatile Object sink;
+
+  /**
+   * Don't let anyone instantiate this class.
+   */
+  private Benchmarks()
+  {
+
+  }
+
+  /**
+   * Returns every benchmark by name, in the order that they are run. Every
+   * benchmark is a Supplier of a single operation, and is only set up when it
+   * is run.
+   */
+  private static Map<String, Supplier<Supplier<Object>>> benchmarks()
+  {
+    Map<String, Supplier<Supplier<Object>>> r =
+        new LinkedHashMap<String, Supplier<Supplier<Object>>>();
+
+    for (int n : new int[] { 3, 4, 6 })
+    {
+      r.put("matrix.times." + n, () -> {
+        Matrix a = random(n), b = random(n);
+        return () -> a.times(b);
+      });
+      r.put("matrix.inv." + n, () -> {
+        Matrix a = random(n);
+        return () -> a.inv();
+      });
+      r.put("matrix.determinant." + n, () -> {
+        Matrix a = random(n);
+        return () -> a.determinant();
+      });
+    }
+
+    Vec3 u = new Vec3(1, 2, 3), v = new Vec3(-4, 5, 0.5);
+    r.put("vec3.add", () -> () -> u.add(v));
+    r.put("vec3.sub", () -> () -> u.sub(v));
+    r.put("vec3.cross", () -> () -> u.cross(v));
+    r.put("vec3.unit", () -> () -> u.unit());
+
+    r.put("basis.G_L", () -> {
+      Basis b = new Basis(new Vec3(10, 20, 30), 0.3, 1.2);
+      return () -> b.G_L(u);
+    });
+    r.put("basis.G_L.into", () -> {
+      Basis b = new Basis(new Vec3(10, 20, 30), 0.3, 1.2);
+      Vec3 out = new Vec3();
+      return () -> b.G_L(u, out);
+    });
+
+    for (int k = 3; k <= 7; k++)
+    {
+      int inflate = k;
+      r.put("scene.addTo.sphere." + k + ".still",
+          () -> addSphere(inflate, false));
+      r.put("scene.addTo.sphere." + k + ".moving",
+          () -> addSphere(inflate, true));
+    }
+
+    for (String shape : new String[] { "small", "large", "thin", "clipped" })
+    {
+      r.put("triangle.draw." + shape, () -> {
+        Camera cam = camera(SIZE);
+        TriangleBuffer src = triangle(shape, cam);
+        TriangleBuffer out = new TriangleBuffer();
+        Vec3[] tmp = Triangle.scratch();
+        return () -> {
+          out.clear();
+          return Triangle.draw(src, 0, cam, tmp, out);
+        };
+      });
+      r.put("triangle_ndc.render." + shape, () -> {
+        Camera cam = camera(SIZE);
+        TriangleBuffer ndc = new TriangleBuffer();
+        Triangle.draw(triangle(shape, cam), 0, cam, Triangle.scratch(), ndc);
+        FrameBuffer fb = new FrameBuffer(SIZE, SIZE, true);
+        return () -> {
+          fb.clear();
+          for (int i = 0; i < ndc.size(); i++)
+            Triangle_NDC.render(ndc.xyz, 9 * i, ndc.rgb[i], fb,
+                0, 0, SIZE - 1, SIZE - 1);
+          return fb;
+        };
+      });
+    }
+
+    // The cost of clearing, which every render benchmark includes.
+    r.put("triangle_ndc.render.none", () -> {
+      FrameBuffer fb = new FrameBuffer(SIZE, SIZE, true);
+      return () -> {
+        fb.clear();
+        return fb;
+      };
+    });
+
+    r.put("triangle.getImage.arguments", () -> {
+      Arguments.initialize();
+      Scene scene = new Scene();
+      scene.addAll(Model.pipeline);
+      scene.addAll(AnimatedModel.pipeline);
+
+      Camera cam = new Camera(new Vec3(), 0, 0, 400, 20000, 1,
+          Writer.WIDTH, Writer.HEIGHT);
+      TriangleBuffer pipeline = new TriangleBuffer();
+      scene.addTo(pipeline, cam);
+
+      FrameBuffer fb = new FrameBuffer(Writer.WIDTH, Writer.HEIGHT, true);
+      TileRenderer tr = new TileRenderer(Triangle.TILE_SIZE, Triangle.THREADS);
+      return () -> Triangle.getImage(pipeline, cam, fb, tr);
+    });
+
+    return r;
+  }
+
+  /**
+   * Returns an n x n Matrix of reproducible pseudorandom entries.
+   */
+  private static Matrix random(int n)
+  {
+    Matrix r = new Matrix(n);
+    long seed = n;
+
+    for (int i = 0; i < n; i++)
+      for (int j = 0; j < n; j++)
+      {
+        seed = seed * 6364136223846793005L + 1442695040888963407L;
+        r.v[i][j] = (seed >>> 11) / (double) (1L << 53) - 0.5;
+      }
+
+    return r;
+  }
+
+  /**
+   * Returns a Camera at the origin that looks along -x, for a square screen of
+   * the specified size.
+   */
+  private static Camera camera(int size)
+  {
+    return new Camera(new Vec3(), 0, 0, 400, 20000, 1, size, size);
+  }
+
+  /**
+   * Returns an operation that adds a Sphere inflated k times in front of the
+   * camera to a Scene, as the simulation thread does, and the Scene to a
+   * pipeline, as the render thread does. A moving Sphere turns every
+   * operation, so it is published as its local mesh and a new matrix instead
+   * of its cached world-space mesh.
+   */
+  private static Supplier<Object> addSphere(int k, boolean moving)
+  {
+    Sphere s = new Sphere(new Vec3(-3000, 0, 0), false, 200, Color.magenta, k);
+    Camera cam = camera(Writer.WIDTH);
+    Scene scene = new Scene();
+    TriangleBuffer pipeline = new TriangleBuffer();
+
+    return () -> {
+      if (moving)
+        s.rZ += 0.001;
+      scene.clear();
+      s.addTo(scene);
+      pipeline.clear();
+      scene.addTo(pipeline, cam);
+      return pipeline;
+    };
+  }
+
+  /**
+   * Returns a pipeline of a single opaque triangle of the specified shape,
+   * 1000 units in front of cam: small (about 8 pixels across), large (about
+   * 200), thin (200 long and 1 wide), or clipped (crossing the near plane).
+   */
+  private static TriangleBuffer triangle(String shape, Camera cam)
+  {
+    double[][] v;
+
+    switch (shape)
+    {
+      case "small":
+        v = new double[][] { { -1000, -10, -10 }, { -1000, 10, -10 },
+            { -1000, 0, 10 } };
+        break;
+      case "large":
+        v = new double[][] { { -1000, -250, -250 }, { -1000, 250, -250 },
+            { -1000, 0, 250 } };
+        break;
+      case "thin":
+        v = new double[][] { { -1000, -250, -250 }, { -1000, 250, 240 },
+            { -1000, 252, 250 } };
+        break;
+      case "clipped":
+        v = new double[][] { { -1000, -250, -250 }, { -1000, 250, -250 },
+            { -100, 0, 50 } };
+        break;
+      default:
+        throw new IllegalArgumentException("There is no " + shape + " triangle!");
+    }
+
+    Vec3[] clip = new Vec3[3];
+    for (int i = 0; i < 3; i++)
+      clip[i] = Camera.clip(cam.viewProjection,
+          new Vec3(v[i][0], v[i][1], v[i][2]), new Vec3());
+
+    TriangleBuffer r = new TriangleBuffer();
+    r.add(clip[0], clip[1], clip[2], 0xff3080c0, 0);
+    return r;
+  }
+
+  /**
+   * Returns the number of bytes that every live thread has allocated.
+   */
+  private static long allocated()
+  {
+    com.sun.management.ThreadMXBean mx =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    long sum = 0;
+    for (long b : mx.getThreadAllocatedBytes(mx.getAllThreadIds()))
+      sum += Math.max(0, b);
+    return sum;
+  }
+
+  /**
+   * Runs op for about the specified number of milliseconds and returns the
+   * number of times that it ran.
+   */
+  private static long loop(Supplier<Object> op, long millis)
+  {
+    long end = System.nanoTime() + millis * 1000000;
+    long ops = 0;
+
+    // Checks the time every 64 operations, so that it costs little.
+    do
+      for (int i = 0; i < 64; i++, ops++)
+        sink = op.get();
+    while (System.nanoTime() < end);
+
+    return ops;
+  }
+
+  /**
+   * Warms up and measures the benchmark name, and prints its results.
+   */
+  private static void run(String name, Supplier<Supplier<Object>> setup)
+  {
+    Supplier<Object> op = setup.get();
+    loop(op, WARMUP);
+
+    double[] ns = new double[ITERATIONS];
+    double bytes = 0, ops = 0;
+
+    for (int i = 0; i < ITERATIONS; i++)
+    {
+      long a = allocated();
+      long t = System.nanoTime();
+      long n = loop(op, TIME);
+      t = System.nanoTime() - t;
+
+      bytes += allocated() - a;
+      ops += n;
+      ns[i] = (double) t / n;
+    }
+
+    double mean = 0, var = 0;
+    for (double x : ns)
+      mean += x / ITERATIONS;
+    for (double x : ns)
+      var += (x - mean) * (x - mean) / Math.max(1, ITERATIONS - 1);
+
+    System.out.printf("%-36s %14.1f %10.1f %12.1f%n", name, mean,
+        Math.sqrt(var), bytes / ops);
+  }
+
+  /**
+   * Runs the benchmark name in a new JVM with the same class path and JVM
+   * arguments as this one.
+   */
+  private static void fork(String name) throws Exception
+  {
+    List<String> cmd = new ArrayList<String>();
+    cmd.add(ProcessHandle.current().info().command().orElse("java"));
+    cmd.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+    cmd.add("-Dbench.fork=false");
+    cmd.add("-cp");
+    cmd.add(System.getProperty("java.class.path"));
+    cmd.add("Benchmarks");
+    cmd.add("^" + Pattern.quote(name) + "$");
+
+    Process p = new ProcessBuilder(cmd).inheritIO().start();
+    if (p.waitFor() != 0)
+      throw new IllegalStateException("The benchmark " + name + " failed!");
+  }
+
+  public static void main(String[] args) throws Exception
+  {
+    Pattern filter = Pattern.compile(args.length > 0 ? args[0] : "");
+    boolean forked = !"false".equals(System.getProperty("bench.fork"));
+
+    if (forked)
+      System.out.printf("%-36s %14s %10s %12s%n",
+          "Benchmark", "ns/op", "error", "B/op");
+
+    for (Map.Entry<String, Supplier<Supplier<Object>>> e :
+        benchmarks().entrySet())
+    {
+      if (!filter.matcher(e.getKey()).find())
+        continue;
+
+      if (forked)
+        fork(e.getKey());
+      else
+        run(e.getKey(), e.getValue());
+    }
+  }
+}
@@ -0,0 +1,128 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A Rasterizer that fills a full vector of pixels per step with the
+ * incubating Vector API: the edge functions, depths and depth tests of every
+ * lane are found at once, and the depths are written through a mask. It draws
+ * exactly what the scalar Rasterizer draws.
+ *
+ * Colors and stamps are ints, whose vectors have a different shape from
+ * vectors of doubles with as many lanes. Casting masks between shapes is not
+ * compiled to vector instructions by the JDK 17 incubator, so they are
+ * written one lane at a time, for the lanes that passed the depth test. A
+ * vector whose stamps are neither all current nor all stale, and the part of
+ * a run too short for a whole vector, are filled by the scalar Rasterizer.
+ *
+ * Selected with -Dvec3d.rasterizer=vector. Compile and run with
+ * --add-modules jdk.incubator.vector, for instance:
+ *
+ * javac -d out *.java
+ * javac --add-modules jdk.incubator.vector -cp out -d out simd/*.java
+ * java --add-modules jdk.incubator.vector -Dvec3d.rasterizer=vector -cp out Central
+ *
+ * @author Justin C
+ */
+public class VectorRasterizer extends Rasterizer
+{
+  /**
+   * The species of depths, and of edge functions with as many lanes.
+   */
+  private static final VectorSpecies<Double> D = DoubleVector.SPECIES_PREFERRED;
+  private static final VectorSpecies<Long> L =
+      VectorSpecies.of(long.class, D.vectorShape());
+
+  /**
+   * The index of every lane, 0, 1, 2, ...
+   */
+  private static final LongVector LANE_L = LongVector.zero(L).addIndex(1);
+  private static final DoubleVector LANE_D =
+      (DoubleVector) LANE_L.convert(VectorOperators.L2D, 0);
+
+  /**
+   * Fills the run a vector of pixels at a time; otherwise identical to
+   * Rasterizer.fill.
+   */
+  public int fill(FrameBuffer fb, int start, int n,
+      long e1, long e2, long e3, long e1_s, long e2_s, long e3_s,
+      boolean covered, double depth_i, double depth_s, int rgb)
+  {
+    int lanes = D.length();
+    int[] stamp = fb.stamp;
+    int wrote = 0;
+    int k = 0;
+
+    // A covered run passes edge functions that are all zero, so every lane
+    // is inside them.
+    long c1 = covered ? 0 : e1, c2 = covered ? 0 : e2, c3 = covered ? 0 : e3;
+    long c1_s = covered ? 0 : e1_s, c2_s = covered ? 0 : e2_s;
+    long c3_s = covered ? 0 : e3_s;
+
+    for (; k + lanes <= n; k += lanes)
+    {
+      int zIndex = start + k;
+
+      // Whether the depths of every lane are current or all stale.
+      boolean current = true, stale = true;
+      if (stamp != null)
+        for (int i = zIndex; i < zIndex + lanes; i++)
+          if (stamp[i] == fb.epoch)
+            stale = false;
+          else
+            current = false;
+
+      if (!current && !stale)
+      {
+        wrote += fill(fb, start, k, k + lanes, e1, e2, e3, e1_s, e2_s, e3_s,
+            covered, depth_i, depth_s, rgb);
+        continue;
+      }
+
+      // The lanes that the triangle covers.
+      LongVector lane = LANE_L.add(k);
+      VectorMask<Double> m = lane.mul(c1_s).add(c1)
+          .or(lane.mul(c2_s).add(c2)).or(lane.mul(c3_s).add(c3))
+          .compare(VectorOperators.GE, 0).cast(D);
+
+      // The lanes that are nearer than the depth already there.
+      DoubleVector z = LANE_D.add(k).mul(depth_s).add(depth_i);
+      DoubleVector depth = current ? DoubleVector.fromArray(D, fb.zib, zIndex) :
+          DoubleVector.broadcast(D, FrameBuffer.FAR);
+      m = m.and(depth.compare(VectorOperators.GT, z));
+
+      if (!m.anyTrue())
+        continue;
+
+      // Writes the depths of those lanes, and leaves the others as they were.
+      DoubleVector.fromArray(D, fb.zib, zIndex).blend(z, m)
+          .intoArray(fb.zib, zIndex);
+      write(fb, zIndex, m, rgb);
+      wrote += m.trueCount();
+    }
+
+    return fill(fb, start, k, n, e1, e2, e3, e1_s, e2_s, e3_s,
+        covered, depth_i, depth_s, rgb) + wrote;
+  }
+
+  /**
+   * Composites rgb over the lanes m of the image starting at zIndex, as
+   * Triangle_NDC.composite, and stamps them.
+   */
+  private static void write(FrameBuffer fb, int zIndex, VectorMask<Double> m,
+      int rgb)
+  {
+    boolean opaque = rgb >>> 24 == 255;
+
+    for (int i = m.firstTrue(); i < D.length();
+        m = m.and(LANE_D.compare(VectorOperators.GT, i)), i = m.firstTrue())
+    {
+      int p = zIndex + i;
+      fb.rgb[p] = opaque ? rgb : Triangle_NDC.composite(rgb, fb.rgb[p]);
+      if (fb.stamp != null)
+        fb.stamp[p] = fb.epoch;
+    }
+  }
+}